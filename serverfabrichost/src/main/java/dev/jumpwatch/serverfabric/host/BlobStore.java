@@ -0,0 +1,391 @@
+package dev.jumpwatch.serverfabric.host;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content-addressed store for template files: rootPath/blobs/sha256/<2 hex>/<64 hex>.
+ *
+ * Each template tree (the template itself, or "&lt;template&gt;@vN" for a baked version) is ingested into its
+ * own manifest (relative path -> hash). Identical files across trees share one blob. Blobs are read-only; instances hard link immutable files straight to the blob, so the
+ * same jar across hundreds of instances is one inode on disk and in page cache. Mutable files are copied
+ * out of their blob.
+ */
+public final class BlobStore {
+
+    public static final class Manifest {
+        public String template;
+        public List<String> dirs = new ArrayList<>();
+        public List<Entry> files = new ArrayList<>();
+    }
+
+    public static final class Entry {
+        public String path;
+        public String hash;
+        public long size;
+        public long mtime;
+    }
+
+    public record Stats(String hostId, int blobs, long storedBytes, long logicalBytes, double dedupRatio,
+                        int manifests) {}
+    public record GcResult(int deleted, long freedBytes) {}
+
+    private static final Set<PosixFilePermission> READ_ONLY = EnumSet.of(
+            PosixFilePermission.OWNER_READ, PosixFilePermission.GROUP_READ, PosixFilePermission.OTHERS_READ);
+
+    private final Path blobsDir;
+    private final Path manifestsDir;
+    private final Path tmpDir;
+    private final ObjectMapper om;
+    private final FileTreeOps ops;
+    private final Map<String, Manifest> manifests = new ConcurrentHashMap<>();
+
+    public BlobStore(Path root, ObjectMapper om, FileTreeOps ops) throws IOException {
+        this.blobsDir = root.resolve("sha256");
+        this.manifestsDir = root.resolve("manifests");
+        this.tmpDir = root.resolve("tmp");
+        this.om = om;
+        this.ops = ops;
+        Files.createDirectories(blobsDir);
+        Files.createDirectories(manifestsDir);
+        Files.createDirectories(tmpDir);
+    }
+
+    private record Stat(String rel, boolean dir, long size, long mtime) {}
+
+    /**
+     * Returns an up-to-date manifest for the template. Unchanged files (same size + mtime as the
+     * previous manifest) are not re-hashed, so this is a stat walk in the common case. That walk runs
+     * without the store lock; only a template that actually changed is re-ingested under it.
+     */
+    public Manifest ingest(String template, Path templateDir) throws IOException {
+        Manifest cached = manifests.get(template);
+        if (cached != null) {
+            List<Stat> stats = scan(templateDir);
+            if (upToDate(cached, stats)) return cached;
+        }
+        return reingest(template, templateDir);
+    }
+
+    private synchronized Manifest reingest(String template, Path templateDir) throws IOException {
+        Manifest previous = manifests.get(template);
+        if (previous == null) previous = readManifest(template);
+
+        Map<String, Entry> known = new HashMap<>();
+        if (previous != null) for (Entry e : previous.files) known.put(e.path, e);
+
+        Manifest m = new Manifest();
+        m.template = template;
+        boolean changed = previous == null;
+
+        for (Stat st : scan(templateDir)) {
+            if (st.dir()) {
+                m.dirs.add(st.rel());
+                continue;
+            }
+
+            Entry prev = known.get(st.rel());
+            if (prev != null && prev.size == st.size() && prev.mtime == st.mtime() && Files.exists(blobPath(prev.hash))) {
+                m.files.add(prev);
+                continue;
+            }
+
+            Entry e = new Entry();
+            e.path = st.rel();
+            e.size = st.size();
+            e.mtime = st.mtime();
+            e.hash = store(templateDir.resolve(st.rel()));
+            m.files.add(e);
+            changed = true;
+        }
+
+        if (previous != null && previous.files.size() != m.files.size()) changed = true;
+        if (previous != null && !previous.dirs.equals(m.dirs)) changed = true;
+
+        if (changed) {
+            writeManifest(m);
+            System.out.println("[Host] Ingested template " + template + " into blob store (" + m.files.size() + " files)");
+        }
+        manifests.put(template, m);
+        return m;
+    }
+
+    /** Directories and regular files under {@code templateDir}, in the order the manifest lists them. */
+    private static List<Stat> scan(Path templateDir) throws IOException {
+        List<Path> paths;
+        try (var s = Files.walk(templateDir)) {
+            paths = s.sorted().toList();
+        }
+
+        List<Stat> out = new ArrayList<>(paths.size());
+        for (Path p : paths) {
+            String rel = templateDir.relativize(p).toString().replace('\\', '/');
+            if (rel.isEmpty()) continue;
+
+            BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+            if (attrs.isDirectory()) out.add(new Stat(rel, true, 0, 0));
+            else if (attrs.isRegularFile()) out.add(new Stat(rel, false, attrs.size(), attrs.lastModifiedTime().toMillis()));
+        }
+        return out;
+    }
+
+    private boolean upToDate(Manifest m, List<Stat> stats) {
+        int d = 0, f = 0;
+        for (Stat st : stats) {
+            if (st.dir()) {
+                if (d >= m.dirs.size() || !m.dirs.get(d++).equals(st.rel())) return false;
+                continue;
+            }
+            if (f >= m.files.size()) return false;
+            Entry e = m.files.get(f++);
+            if (!e.path.equals(st.rel()) || e.size != st.size() || e.mtime != st.mtime()) return false;
+            if (!Files.exists(blobPath(e.hash))) return false;
+        }
+        return d == m.dirs.size() && f == m.files.size();
+    }
+
+    /**
+     * Builds {@code dst} from the manifest. Files matching {@code immutable} are hard linked to their blob,
+     * everything else is copied out of the blob (in parallel). Subtrees in {@code skip} are left out.
+     * Returns false if hard links are not possible here.
+     */
+    public boolean materialize(Manifest m, Path dst, List<PathMatcher> immutable, List<Path> skip) throws IOException {
+        Files.createDirectories(dst);
+        for (String d : m.dirs) if (!under(skip, d)) Files.createDirectories(dst.resolve(d));
+        List<Entry> rest = new ArrayList<>(m.files.size());
+        for (Entry e : m.files) {
+            if (under(skip, e.path)) continue;
+            Files.createDirectories(dst.resolve(e.path).getParent());
+            rest.add(e);
+        }
+
+        // probe with the first immutable file so an fs without hard links falls back before any copying
+        for (Iterator<Entry> it = rest.iterator(); it.hasNext(); ) {
+            Entry e = it.next();
+            if (!matches(immutable, Path.of(e.path))) continue;
+            try {
+                Files.createLink(dst.resolve(e.path), blobPath(e.hash));
+            } catch (UnsupportedOperationException | FileSystemException ex) {
+                return false;
+            }
+            it.remove();
+            break;
+        }
+
+        ops.forEach(rest, e -> {
+            Path to = dst.resolve(e.path);
+            Path blob = blobPath(e.hash);
+
+            if (matches(immutable, Path.of(e.path))) {
+                try {
+                    Files.createLink(to, blob);
+                    return;
+                } catch (UnsupportedOperationException | FileSystemException ignored) {
+                    // fall through to a private copy
+                }
+            }
+
+            FileTreeOps.copyFile(blob, to);
+            try {
+                // blobs are read-only; the instance's private copy must not be
+                Files.setPosixFilePermissions(to, EnumSet.of(
+                        PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE,
+                        PosixFilePermission.GROUP_READ, PosixFilePermission.OTHERS_READ));
+            } catch (UnsupportedOperationException ignored) {
+                to.toFile().setWritable(true, true);
+            }
+            Files.setLastModifiedTime(to, FileTime.fromMillis(e.mtime));
+        });
+        return true;
+    }
+
+    /** Deletes blobs that no manifest references and no instance links to. */
+    public synchronized GcResult gc(Collection<String> liveTemplates) throws IOException {
+        // drop manifests of trees that no longer exist (deleted templates, pruned bakes)
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(manifestsDir, "*.json")) {
+            for (Path p : ds) {
+                String t = p.getFileName().toString();
+                t = t.substring(0, t.length() - ".json".length());
+                if (!liveTemplates.contains(t)) {
+                    Files.deleteIfExists(p);
+                    manifests.remove(t);
+                }
+            }
+        }
+
+        Set<String> referenced = referencedHashes();
+        int[] deleted = { 0 };
+        long[] freed = { 0 };
+
+        forEachBlob((hash, p) -> {
+            if (referenced.contains(hash)) return;
+            if (linkCount(p) > 1) return; // still hard linked from an instance
+            long size = Files.size(p);
+            Files.deleteIfExists(p);
+            deleted[0]++;
+            freed[0] += size;
+        });
+
+        if (deleted[0] > 0) {
+            System.out.println("[Host] Blob GC removed " + deleted[0] + " blob(s), " + freed[0] / (1024 * 1024) + " MB");
+        }
+        return new GcResult(deleted[0], freed[0]);
+    }
+
+    /**
+     * storedBytes is what the blobs occupy; logicalBytes is what the same data would take without
+     * sharing (one copy per manifest reference plus one per instance hard link).
+     */
+    public synchronized Stats stats(String hostId) throws IOException {
+        Map<String, Integer> refs = new HashMap<>();
+        int manifestCount = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(manifestsDir, "*.json")) {
+            for (Path p : ds) {
+                Manifest m = om.readValue(p.toFile(), Manifest.class);
+                manifestCount++;
+                for (Entry e : m.files) refs.merge(e.hash, 1, Integer::sum);
+            }
+        }
+
+        int[] blobs = { 0 };
+        long[] stored = { 0 };
+        long[] logical = { 0 };
+        forEachBlob((hash, p) -> {
+            long size = Files.size(p);
+            long copies = refs.getOrDefault(hash, 0) + (linkCount(p) - 1);
+            blobs[0]++;
+            stored[0] += size;
+            logical[0] += size * Math.max(1, copies);
+        });
+
+        double ratio = stored[0] == 0 ? 1.0 : (double) logical[0] / stored[0];
+        return new Stats(hostId, blobs[0], stored[0], logical[0], ratio, manifestCount);
+    }
+
+    // ---- internals ----
+
+    private String store(Path file) throws IOException {
+        Path tmp = Files.createTempFile(tmpDir, "ingest-", ".tmp");
+        try {
+            MessageDigest md = sha256();
+            try (InputStream in = Files.newInputStream(file);
+                 var out = Files.newOutputStream(tmp, StandardOpenOption.TRUNCATE_EXISTING)) {
+                byte[] buf = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    md.update(buf, 0, n);
+                    out.write(buf, 0, n);
+                }
+            }
+
+            String hash = HexFormat.of().formatHex(md.digest());
+            Path blob = blobPath(hash);
+            if (!Files.exists(blob)) {
+                Files.createDirectories(blob.getParent());
+                try {
+                    Files.setPosixFilePermissions(tmp, READ_ONLY);
+                } catch (UnsupportedOperationException ignored) {
+                    tmp.toFile().setReadOnly();
+                }
+                try {
+                    Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException ignored) {
+                    // another ingest stored the same content first
+                }
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private Path blobPath(String hash) {
+        return blobsDir.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private Set<String> referencedHashes() throws IOException {
+        Set<String> out = new HashSet<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(manifestsDir, "*.json")) {
+            for (Path p : ds) {
+                for (Entry e : om.readValue(p.toFile(), Manifest.class).files) out.add(e.hash);
+            }
+        }
+        return out;
+    }
+
+    private Manifest readManifest(String template) throws IOException {
+        Path f = manifestsDir.resolve(template + ".json");
+        if (!Files.exists(f)) return null;
+        try {
+            return om.readValue(f.toFile(), Manifest.class);
+        } catch (IOException e) {
+            System.out.println("[Host] Ignoring unreadable manifest for " + template + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeManifest(Manifest m) throws IOException {
+        Path f = manifestsDir.resolve(m.template + ".json");
+        Path tmp = f.resolveSibling(f.getFileName() + ".tmp");
+        om.writeValue(tmp.toFile(), m);
+        Files.move(tmp, f, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void forEachBlob(BlobVisitor v) throws IOException {
+        try (var s = Files.walk(blobsDir, 2)) {
+            s.filter(Files::isRegularFile).forEach(p -> {
+                try {
+                    v.visit(p.getFileName().toString(), p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static long linkCount(Path p) {
+        try {
+            return ((Number) Files.getAttribute(p, "unix:nlink")).longValue();
+        } catch (Exception e) {
+            return 1;
+        }
+    }
+
+    private static boolean under(List<Path> roots, String rel) {
+        if (roots.isEmpty()) return false;
+        Path p = Path.of(rel);
+        for (Path r : roots) if (p.startsWith(r)) return true;
+        return false;
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, Path rel) {
+        for (PathMatcher m : matchers) {
+            if (m.matches(rel)) return true;
+        }
+        return false;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface BlobVisitor { void visit(String hash, Path blob) throws IOException; }
+}
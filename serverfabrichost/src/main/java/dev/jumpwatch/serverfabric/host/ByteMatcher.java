@@ -0,0 +1,143 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho–Corasick multi-pattern matcher over raw bytes, compiled into a DFA.
+ *
+ * Bytes that occur in no pattern share one input class, so the transition table is
+ * (states x distinct pattern bytes) instead of (states x 256). A compiled matcher is immutable and
+ * shared; each output stream keeps a {@link Cursor}, which is one int of state, so matches spanning
+ * chunk boundaries are found and feeding a chunk allocates nothing.
+ */
+public final class ByteMatcher {
+
+    @FunctionalInterface
+    public interface Hit { void onMatch(int patternId); }
+
+    private static final int[] NONE = new int[0];
+
+    private final int[] byteClass = new int[256];
+    private final int classes;
+    private final int[] delta;     // state * classes + class -> next state
+    private final int[][] outputs; // pattern ids ending in each state (fail chain included)
+
+    private ByteMatcher(List<byte[]> patterns) {
+        // input classes: 0 = "any other byte"
+        int next = 1;
+        for (byte[] p : patterns) {
+            for (byte b : p) {
+                if (byteClass[b & 0xff] == 0) byteClass[b & 0xff] = next++;
+            }
+        }
+        classes = next;
+
+        // trie
+        List<int[]> go = new ArrayList<>();
+        List<int[]> out = new ArrayList<>();
+        go.add(newRow());
+        out.add(NONE);
+        for (int id = 0; id < patterns.size(); id++) {
+            // an id on the root would be copied to every state and fire on every byte
+            if (patterns.get(id).length == 0) continue;
+            int s = 0;
+            for (byte b : patterns.get(id)) {
+                int c = byteClass[b & 0xff];
+                if (go.get(s)[c] < 0) {
+                    go.get(s)[c] = go.size();
+                    go.add(newRow());
+                    out.add(NONE);
+                }
+                s = go.get(s)[c];
+            }
+            out.set(s, append(out.get(s), id));
+        }
+
+        // BFS: fail links, folded straight into a full DFA
+        int states = go.size();
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int[] root = go.get(0);
+        for (int c = 0; c < classes; c++) {
+            if (root[c] < 0) {
+                root[c] = 0;
+            } else {
+                fail[root[c]] = 0;
+                queue.add(root[c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            int[] row = go.get(s);
+            for (int c = 0; c < classes; c++) {
+                int t = row[c];
+                if (t < 0) {
+                    row[c] = go.get(fail[s])[c];
+                } else {
+                    fail[t] = go.get(fail[s])[c];
+                    if (out.get(fail[t]).length > 0) out.set(t, concat(out.get(t), out.get(fail[t])));
+                    queue.add(t);
+                }
+            }
+        }
+
+        delta = new int[states * classes];
+        for (int s = 0; s < states; s++) System.arraycopy(go.get(s), 0, delta, s * classes, classes);
+        outputs = out.toArray(new int[0][]);
+    }
+
+    /** Compiles the patterns; pattern ids are their list indexes. Empty patterns never match. */
+    public static ByteMatcher compile(List<byte[]> patterns) {
+        List<byte[]> list = new ArrayList<>(patterns.size());
+        for (byte[] p : patterns) list.add(p == null ? new byte[0] : p);
+        return new ByteMatcher(list);
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /** Matching state of one byte stream. Not thread-safe; one per stream. */
+    public final class Cursor {
+        private int state = 0;
+
+        public void feed(byte[] buf, int off, int len, Hit hit) {
+            int s = state;
+            final int[] d = delta;
+            final int k = classes;
+            for (int i = off, end = off + len; i < end; i++) {
+                s = d[s * k + byteClass[buf[i] & 0xff]];
+                int[] o = outputs[s];
+                if (o.length != 0) {
+                    for (int id : o) hit.onMatch(id);
+                }
+            }
+            state = s;
+        }
+
+        public void reset() {
+            state = 0;
+        }
+    }
+
+    private int[] newRow() {
+        int[] r = new int[classes];
+        Arrays.fill(r, -1);
+        return r;
+    }
+
+    private static int[] append(int[] a, int v) {
+        int[] r = Arrays.copyOf(a, a.length + 1);
+        r[a.length] = v;
+        return r;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] r = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, r, a.length, b.length);
+        return r;
+    }
+}
@@ -0,0 +1,174 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+/**
+ * Dynamic AppCDS archives per template under rootPath/cds/&lt;template&gt;/&lt;key&gt;.jsa (config: appCds).
+ *
+ * The key hashes the server jar and the instance JVM's {@code -version} output, so a new jar or JDK gets a new
+ * archive. With no archive for the key, the next start of the template is the training run: it gets
+ * {@code -XX:ArchiveClassesAtExit} and the JVM writes the archive when it is stopped cleanly. Later starts get
+ * {@code -XX:SharedArchiveFile}; the JVM runs without it (-Xshare:auto) if it is rejected for any reason.
+ * Instances run {@code -jar <relative jar>} with the template's mtime, so one archive fits all of them.
+ */
+public final class CdsArchives {
+
+    public enum Mode { OFF, TRAINING, ARCHIVE }
+
+    private record Run(String template, String key, Path tmp, Mode mode) {}
+
+    private final Path dir;
+    private final String javaCmd;
+    private final JarHashes jarHashes;
+    private volatile String jvmKey; // null until probed; "" if the JVM can't do dynamic archives (< 13)
+
+    private final Map<String, String> training = new HashMap<>(); // archive key -> instance
+    private final Map<String, Run> runs = new ConcurrentHashMap<>(); // instance -> what it was started with
+
+    public CdsArchives(Path dir, String javaCmd, JarHashes jarHashes) throws IOException {
+        this.dir = dir;
+        this.javaCmd = javaCmd;
+        this.jarHashes = jarHashes;
+        Files.createDirectories(dir);
+        // training runs that never finished (host killed)
+        try (var walk = Files.walk(dir, 2)) {
+            for (Path p : walk.filter(p -> p.getFileName().toString().endsWith(".tmp")).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /** JVM args to add for a start of {@code instance}; empty if the args already pick a CDS setup. */
+    public List<String> argsFor(String instance, String template, Path jar, List<String> jvmArgs) {
+        // a previous run whose exit was never reported (restarted before its exit callback ran)
+        Run stale = runs.remove(instance);
+        if (stale != null && stale.mode() == Mode.TRAINING) {
+            synchronized (training) {
+                training.remove(stale.key());
+            }
+            try {
+                Files.deleteIfExists(stale.tmp());
+            } catch (IOException ignored) {
+            }
+        }
+        for (String a : jvmArgs) {
+            if (a.startsWith("-XX:SharedArchiveFile") || a.startsWith("-XX:ArchiveClassesAtExit")
+                    || a.startsWith("-Xshare") || a.contains("AutoCreateSharedArchive")) {
+                return List.of();
+            }
+        }
+
+        String key;
+        try {
+            String jvm = jvmKey();
+            if (jvm.isEmpty()) return List.of();
+            key = sha256((jarHashes.sha256(jar) + "\n" + jvm).getBytes(StandardCharsets.UTF_8)).substring(0, 24);
+        } catch (IOException e) {
+            System.out.println("[ServerFabric-Host] AppCDS skipped for " + instance + ": " + e.getMessage());
+            return List.of();
+        }
+
+        Path templateDir = dir.resolve(template);
+        Path archive = templateDir.resolve(key + ".jsa");
+        if (Files.isRegularFile(archive)) {
+            runs.put(instance, new Run(template, key, null, Mode.ARCHIVE));
+            return List.of("-XX:SharedArchiveFile=" + archive.toAbsolutePath());
+        }
+
+        synchronized (training) {
+            if (training.containsKey(key)) return List.of(); // someone else is already training it
+            training.put(key, instance);
+        }
+        Path tmp = templateDir.resolve(key + ".jsa." + instance + ".tmp");
+        try {
+            Files.createDirectories(templateDir);
+        } catch (IOException e) {
+            synchronized (training) {
+                training.remove(key);
+            }
+            return List.of();
+        }
+        runs.put(instance, new Run(template, key, tmp, Mode.TRAINING));
+        System.out.println("[ServerFabric-Host] " + instance + " is the AppCDS training run for " + template);
+        return List.of("-XX:ArchiveClassesAtExit=" + tmp.toAbsolutePath());
+    }
+
+    public Mode mode(String instance) {
+        Run r = runs.get(instance);
+        return r == null ? Mode.OFF : r.mode();
+    }
+
+    /** The instance exited; a training run stopped cleanly has written its archive, which replaces older ones. */
+    public void exited(String instance, boolean clean) {
+        Run r = runs.remove(instance);
+        if (r == null || r.mode() != Mode.TRAINING) return;
+        try {
+            if (clean && Files.isRegularFile(r.tmp()) && Files.size(r.tmp()) > 0) {
+                Path archive = r.tmp().resolveSibling(r.key() + ".jsa");
+                Files.move(r.tmp(), archive, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                try (var files = Files.list(archive.getParent())) {
+                    for (Path p : files.toList()) {
+                        String n = p.getFileName().toString();
+                        if (n.endsWith(".jsa") && !p.equals(archive)) Files.deleteIfExists(p);
+                    }
+                }
+                System.out.println("[ServerFabric-Host] AppCDS archive for " + r.template() + " written ("
+                        + Files.size(archive) / 1024 + " KB)");
+            } else {
+                Files.deleteIfExists(r.tmp());
+            }
+        } catch (IOException e) {
+            System.out.println("[ServerFabric-Host] AppCDS archive for " + r.template() + " failed: " + e.getMessage());
+        } finally {
+            synchronized (training) {
+                training.remove(r.key());
+            }
+        }
+    }
+
+    private String jvmKey() throws IOException {
+        String k = jvmKey;
+        if (k != null) return k;
+        Process p = new ProcessBuilder(javaCmd, "-version").redirectErrorStream(true).start();
+        String out;
+        try (InputStream in = p.getInputStream()) {
+            out = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try {
+            if (!p.waitFor(30, TimeUnit.SECONDS)) p.destroyForcibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Matcher m = java.util.regex.Pattern.compile("version \"(?:1\\.)?(\\d+)").matcher(out);
+        int major = m.find() ? Integer.parseInt(m.group(1)) : 0;
+        if (major < 13) {
+            System.out.println("[ServerFabric-Host] AppCDS off: " + javaCmd + " is not Java 13+");
+            k = "";
+        } else {
+            k = sha256(out.getBytes(StandardCharsets.UTF_8));
+        }
+        jvmKey = k;
+        return k;
+    }
+
+    private static String sha256(byte[] data) {
+        return HexFormat.of().formatHex(digest().digest(data));
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
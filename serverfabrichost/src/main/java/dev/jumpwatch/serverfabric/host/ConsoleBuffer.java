@@ -0,0 +1,105 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-size ring of an instance's raw console bytes (config: consoleBufferKb).
+ *
+ * Offsets are absolute: {@link #end()} is the number of bytes ever written, so a follower can ask for
+ * "everything after offset X" across restarts of the same instance. Bytes older than
+ * {@code end() - capacity} are gone; reads starting there are clamped and flagged as truncated.
+ *
+ * Writes only copy into the array under a short lock, so the drain thread is never held up by readers.
+ */
+public final class ConsoleBuffer {
+
+    /** Bytes {@code [start, end)} of the console; {@code truncated} if the requested start was overwritten. */
+    public record Slice(long start, long end, boolean truncated, byte[] data) {}
+
+    private final byte[] ring;
+    private long written = 0;
+
+    public ConsoleBuffer(int capacityBytes) {
+        this.ring = new byte[Math.max(1024, capacityBytes)];
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    public synchronized long end() {
+        return written;
+    }
+
+    public void write(byte[] buf, int off, int len) {
+        synchronized (this) {
+            if (len >= ring.length) {
+                // only the tail survives anyway
+                off += len - ring.length;
+                written += len - ring.length;
+                len = ring.length;
+            }
+            int pos = (int) (written % ring.length);
+            int first = Math.min(len, ring.length - pos);
+            System.arraycopy(buf, off, ring, pos, first);
+            if (first < len) System.arraycopy(buf, off + first, ring, 0, len - first);
+            written += len;
+            notifyAll();
+        }
+    }
+
+    /** The last {@code maxBytes} bytes (at most the capacity). */
+    public Slice tail(int maxBytes) {
+        synchronized (this) {
+            return readLocked(Math.max(0, written - Math.max(0, maxBytes)), maxBytes);
+        }
+    }
+
+    /**
+     * Bytes from absolute offset {@code from} (at most {@code maxBytes}), waiting up to {@code waitMs}
+     * for output if there is nothing new yet.
+     */
+    public Slice read(long from, int maxBytes, long waitMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMs;
+        synchronized (this) {
+            while (written <= from) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) break;
+                wait(left);
+            }
+            return readLocked(from, maxBytes);
+        }
+    }
+
+    /**
+     * Copies bytes from absolute offset {@code from} into {@code dst} (as many as fit) without waiting.
+     * Returns the offset actually copied from, which is past {@code from} if those bytes were overwritten.
+     */
+    public long copy(long from, ByteBuffer dst) {
+        synchronized (this) {
+            long oldest = Math.max(0, written - ring.length);
+            long start = Math.min(Math.max(from, oldest), written);
+            int len = (int) Math.min(dst.remaining(), written - start);
+
+            int pos = (int) (start % ring.length);
+            int first = Math.min(len, ring.length - pos);
+            dst.put(ring, pos, first);
+            if (first < len) dst.put(ring, 0, len - first);
+            return start;
+        }
+    }
+
+    private Slice readLocked(long from, int maxBytes) {
+        long oldest = Math.max(0, written - ring.length);
+        boolean truncated = from < oldest;
+        long start = Math.min(Math.max(from, oldest), written);
+        int len = (int) Math.min(Math.max(0, maxBytes), written - start);
+
+        byte[] out = new byte[len];
+        int pos = (int) (start % ring.length);
+        int first = Math.min(len, ring.length - pos);
+        System.arraycopy(ring, pos, out, 0, first);
+        if (first < len) System.arraycopy(ring, 0, out, first, len - first);
+        return new Slice(start, start + len, truncated, out);
+    }
+}
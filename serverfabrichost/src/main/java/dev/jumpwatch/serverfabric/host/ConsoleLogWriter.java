@@ -0,0 +1,278 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes every instance's console to {@code instances/<name>/logs/serverfabric-console.log}.
+ *
+ * The drain threads only append to the instance's {@link ConsoleBuffer}; one writer thread picks up
+ * whatever is new in each ring every {@link #FLUSH_MS} and writes it in one go, so a chatty server never
+ * blocks a pump or the host's own stdout. Files rotate by size or age; rotated segments are gzipped in
+ * the background and only the newest {@code keepFiles} are kept.
+ *
+ * Host stdout gets an optional mirror, limited to {@code mirrorBytesPerSec} per instance.
+ */
+public final class ConsoleLogWriter {
+
+    static final String FILE_PREFIX = "serverfabric-console";
+    private static final long FLUSH_MS = 200;
+    private static final int BATCH_BYTES = 256 * 1024;
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final long maxFileBytes;
+    private final long rotateMs;
+    private final int keepFiles;
+    private final long mirrorBytesPerSec;
+
+    private final Map<String, Log> logs = new ConcurrentHashMap<>();
+    private final ByteBuffer batch = ByteBuffer.allocate(BATCH_BYTES); // writer thread only
+
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ServerFabric-Host-logs");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService gzip = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ServerFabric-Host-gzip");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    public ConsoleLogWriter(long maxFileBytes, long rotateMs, int keepFiles, long mirrorBytesPerSec) {
+        this.maxFileBytes = Math.max(64 * 1024, maxFileBytes);
+        this.rotateMs = rotateMs <= 0 ? Long.MAX_VALUE : rotateMs;
+        this.keepFiles = Math.max(1, keepFiles);
+        this.mirrorBytesPerSec = Math.max(0, mirrorBytesPerSec);
+        writer.scheduleWithFixedDelay(this::flushAll, FLUSH_MS, FLUSH_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Starts logging {@code console} from its current end; call before the process starts. */
+    public void attach(String name, Path logDir, ConsoleBuffer console) {
+        Log l = new Log(name, logDir, console, console.end());
+        Log old = logs.put(name, l);
+        if (old != null) writer.execute(() -> finish(old));
+        // segments left uncompressed by a previous run (host stopped mid-gzip)
+        gzip.execute(() -> compressLeftovers(logDir));
+    }
+
+    /** Writes what is left of {@code name}'s output and closes its file. */
+    public void detach(String name) {
+        Log l = logs.remove(name);
+        if (l != null) writer.execute(() -> finish(l));
+    }
+
+    public void shutdown() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+        }
+        for (Log l : logs.values()) finish(l);
+        logs.clear();
+        gzip.shutdown();
+    }
+
+    private void flushAll() {
+        for (Log l : logs.values()) {
+            try {
+                drain(l);
+                l.warned = false;
+            } catch (IOException e) {
+                l.closeQuietly();
+                if (!l.warned) {
+                    System.out.println("[ServerFabric-Host] Console log for " + l.name + " failed: " + e.getMessage());
+                    l.warned = true;
+                }
+            }
+        }
+    }
+
+    private void finish(Log l) {
+        try {
+            drain(l);
+        } catch (IOException e) {
+            System.out.println("[ServerFabric-Host] Console log for " + l.name + " failed: " + e.getMessage());
+        }
+        l.closeQuietly();
+    }
+
+    private void drain(Log l) throws IOException {
+        while (l.offset < l.console.end()) {
+            batch.clear();
+            long start = l.console.copy(l.offset, batch);
+            if (start > l.offset) {
+                byte[] note = ("\n[ServerFabric] " + (start - l.offset) + " bytes of output lost (log writer fell behind)\n")
+                        .getBytes(StandardCharsets.UTF_8);
+                l.write(ByteBuffer.wrap(note));
+            }
+            batch.flip();
+            int n = batch.remaining();
+            if (n == 0) break;
+
+            mirror(l, batch.array(), n);
+            l.write(batch);
+            l.offset = start + n;
+            if (l.size >= maxFileBytes) rotate(l);
+        }
+
+        if (l.size > 0 && System.currentTimeMillis() - l.openedAt >= rotateMs) rotate(l);
+    }
+
+    private void mirror(Log l, byte[] buf, int len) {
+        if (mirrorBytesPerSec == 0) return;
+
+        long now = System.currentTimeMillis();
+        l.tokens = Math.min(mirrorBytesPerSec, l.tokens + (now - l.lastRefill) * mirrorBytesPerSec / 1000);
+        l.lastRefill = now;
+
+        if (len > l.tokens) {
+            l.suppressed += len;
+            return;
+        }
+        l.tokens -= len;
+
+        synchronized (System.out) {
+            if (l.suppressed > 0) {
+                System.out.println("[" + l.name + "] (" + l.suppressed + " bytes not mirrored, see logs/" + FILE_PREFIX + ".log)");
+                l.suppressed = 0;
+                l.lineStart = true;
+            }
+            int from = 0;
+            for (int i = 0; i < len; i++) {
+                if (l.lineStart) {
+                    System.out.write(l.prefix, 0, l.prefix.length);
+                    l.lineStart = false;
+                }
+                if (buf[i] == '\n') {
+                    System.out.write(buf, from, i + 1 - from);
+                    from = i + 1;
+                    l.lineStart = true;
+                }
+            }
+            if (from < len) System.out.write(buf, from, len - from);
+            System.out.flush();
+        }
+    }
+
+    private void rotate(Log l) throws IOException {
+        l.closeQuietly();
+        Path current = l.dir.resolve(FILE_PREFIX + ".log");
+        if (!Files.exists(current)) return;
+
+        String stamp = LocalDateTime.now().format(STAMP);
+        Path rotated = l.dir.resolve(FILE_PREFIX + "-" + stamp + ".log");
+        for (int i = 1; Files.exists(rotated) || Files.exists(gzName(rotated)); i++) {
+            rotated = l.dir.resolve(FILE_PREFIX + "-" + stamp + "-" + i + ".log");
+        }
+        Files.move(current, rotated, StandardCopyOption.ATOMIC_MOVE);
+
+        Path segment = rotated;
+        gzip.execute(() -> {
+            compress(segment);
+            prune(l.dir);
+        });
+    }
+
+    private void compressLeftovers(Path dir) {
+        if (!Files.isDirectory(dir)) return;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, FILE_PREFIX + "-*.log")) {
+            for (Path p : ds) compress(p);
+        } catch (IOException ignored) {
+        }
+        prune(dir);
+    }
+
+    private static void compress(Path segment) {
+        Path gz = gzName(segment);
+        Path tmp = segment.resolveSibling(gz.getFileName() + ".tmp");
+        try {
+            try (InputStream in = Files.newInputStream(segment);
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp), 64 * 1024)) {
+                in.transferTo(out);
+            }
+            Files.move(tmp, gz, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(segment);
+        } catch (IOException e) {
+            // instance deleted meanwhile, disk full, ...: leave the plain segment for the next attach
+            try { Files.deleteIfExists(tmp); } catch (IOException ignored) {}
+        }
+    }
+
+    private void prune(Path dir) {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, FILE_PREFIX + "-*.log.gz")) {
+            for (Path p : ds) segments.add(p);
+        } catch (IOException e) {
+            return;
+        }
+        if (segments.size() <= keepFiles) return;
+
+        // names sort by timestamp
+        segments.sort(null);
+        for (Path p : segments.subList(0, segments.size() - keepFiles)) {
+            try { Files.deleteIfExists(p); } catch (IOException ignored) {}
+        }
+    }
+
+    private static Path gzName(Path segment) {
+        return segment.resolveSibling(segment.getFileName() + ".gz");
+    }
+
+    private static final class Log {
+        final String name;
+        final Path dir;
+        final ConsoleBuffer console;
+        final byte[] prefix;
+        long offset;
+
+        FileChannel ch;
+        long size;
+        long openedAt;
+
+        long tokens;
+        long lastRefill = System.currentTimeMillis();
+        long suppressed;
+        boolean lineStart = true;
+        boolean warned;
+
+        Log(String name, Path dir, ConsoleBuffer console, long offset) {
+            this.name = name;
+            this.dir = dir;
+            this.console = console;
+            this.prefix = ("[" + name + "] ").getBytes(StandardCharsets.UTF_8);
+            this.offset = offset;
+        }
+
+        void write(ByteBuffer b) throws IOException {
+            if (ch == null) {
+                Files.createDirectories(dir);
+                ch = FileChannel.open(dir.resolve(FILE_PREFIX + ".log"),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                size = ch.size();
+                openedAt = System.currentTimeMillis();
+            }
+            while (b.hasRemaining()) size += ch.write(b);
+        }
+
+        void closeQuietly() {
+            if (ch == null) return;
+            try { ch.close(); } catch (IOException ignored) {}
+            ch = null;
+            size = 0;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package dev.jumpwatch.serverfabric.host;
 import com.sun.net.httpserver.HttpServer;
 import java.net.InetSocketAddress;
 import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -13,6 +14,18 @@ public final class DynHostMain {
     public static void main(String[] args) throws Exception {
         Path configPath = Path.of("dyn", "config.properties");
         for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equalsIgnoreCase("--bench-copy")) {
+                int parallelism = i + 2 < args.length
+                        ? Integer.parseInt(args[i + 2])
+                        : Runtime.getRuntime().availableProcessors();
+                HostBench.copy(Path.of(args[i + 1]), parallelism, 3);
+                return;
+            }
+            if (args[i].equalsIgnoreCase("--bench-status") && i + 3 < args.length) {
+                int creates = i + 4 < args.length ? Integer.parseInt(args[i + 4]) : 50;
+                HostBench.status(args[i + 1], args[i + 2], args[i + 3], creates);
+                return;
+            }
             if (args[i].equalsIgnoreCase("--config")) {
                 configPath = Path.of(args[i + 1]);
                 break;
@@ -25,14 +38,32 @@ public final class DynHostMain {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("[ServerFabric-Host] Shutdown hook triggered, persisting instance states...");
             try {
+                mgr.pool().shutdown();
+                if (cfg.shutdownTimeoutSeconds() > 0) {
+                    var res = mgr.drain(cfg.shutdownTimeoutSeconds() * 1000L);
+                    System.out.println("[ServerFabric-Host] Stopped " + res.stopped() + " instance(s) in " + res.tookMs()
+                            + " ms (" + res.killed() + " killed)");
+                }
                 mgr.persistAllLiveStates();
             } catch (Exception e) {
                 System.out.println("[ServerFabric-Host] Shutdown hook persist failed: " + e.getMessage());
             }
         }, "ServerFabric-Host-shutdown"));
 
-        HostHttpApi api = new HostHttpApi(cfg.token(), mgr);
+        ExecutorService ops = new ThreadPoolExecutor(
+                Math.max(1, cfg.maxConcurrentOps()), Math.max(1, cfg.maxConcurrentOps()),
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(1000),
+                r -> {
+                    Thread t = new Thread(r, "ServerFabric-Host-ops");
+                    t.setDaemon(true);
+                    return t;
+                }
+        );
+        HostHttpApi api = new HostHttpApi(cfg.token(), mgr, ops);
 
+        // small JSON replies otherwise wait on Nagle + delayed ACK (~40 ms) on keep-alive connections
+        System.setProperty("sun.net.httpserver.nodelay", "true");
         HttpServer server = HttpServer.create(
                 new InetSocketAddress(cfg.bindHost(), cfg.bindPort()), 0
         );
@@ -40,11 +71,16 @@ public final class DynHostMain {
             System.out.println("[ServerFabric-Host] Uncaught in " + t.getName() + ": " + e);
             e.printStackTrace();
         });
-        server.setExecutor(new ThreadPoolExecutor(
-                4, 32,
-                60L, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>(500)
-        ));
+        if (cfg.httpExecutor().equalsIgnoreCase("POOL")) {
+            server.setExecutor(new ThreadPoolExecutor(
+                    4, 32,
+                    60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(500)
+            ));
+        } else {
+            // long-polls and slow clients cost a virtual thread each, never a platform thread
+            server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        }
         api.register(server);
         server.start();
 
@@ -0,0 +1,56 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sequenced instance events (CREATED, STATE, DELETED) kept in a fixed ring for resumable streams.
+ *
+ * Sequence numbers start at the boot wall-clock time (like {@link StatusTracker} versions), so an id
+ * handed out by a previous host run is never mistaken for one of this run.
+ */
+public final class EventBus {
+
+    public record Event(long seq, String type, String name, int port, String state, long ts) {}
+
+    private static final int CAPACITY = 4096;
+
+    private final Event[] ring = new Event[CAPACITY];
+    private final long firstSeq = System.currentTimeMillis();
+    private long nextSeq = firstSeq;
+
+    public synchronized void publish(String type, String name, int port, String state) {
+        long seq = nextSeq++;
+        ring[(int) (seq % CAPACITY)] = new Event(seq, type, name, port, state, System.currentTimeMillis());
+        notifyAll();
+    }
+
+    /** Sequence of the most recent event (or one below the first, if nothing was published yet). */
+    public synchronized long lastSeq() {
+        return nextSeq - 1;
+    }
+
+    /**
+     * True if every event after {@code seq} is still in the ring (and {@code seq} belongs to this run),
+     * i.e. a client resuming from it misses nothing.
+     */
+    public synchronized boolean canResume(long seq) {
+        long oldest = Math.max(firstSeq, nextSeq - CAPACITY);
+        return seq >= oldest - 1 && seq < nextSeq;
+    }
+
+    /** Events after {@code seq}, waiting up to {@code waitMs} for the first one. Empty on timeout. */
+    public synchronized List<Event> after(long seq, long waitMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMs;
+        while (nextSeq - 1 <= seq) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) return List.of();
+            wait(left);
+        }
+
+        long from = Math.max(seq + 1, Math.max(firstSeq, nextSeq - CAPACITY));
+        List<Event> out = new ArrayList<>((int) (nextSeq - from));
+        for (long s = from; s < nextSeq; s++) out.add(ring[(int) (s % CAPACITY)]);
+        return out;
+    }
+}
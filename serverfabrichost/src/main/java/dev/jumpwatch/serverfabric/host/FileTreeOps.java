@@ -0,0 +1,211 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Parallel copy/delete of directory trees on a dedicated fork/join pool (config: ioParallelism).
+ *
+ * One walk collects the tree; all directories are created up front (parents first), then files are
+ * copied in parallel chunks. Files above {@link #TRANSFER_THRESHOLD} go through FileChannel.transferTo
+ * so the kernel can use copy_file_range/sendfile.
+ */
+public final class FileTreeOps {
+
+    @FunctionalInterface
+    public interface IoConsumer<T> { void accept(T t) throws IOException; }
+
+    static final long TRANSFER_THRESHOLD = 8L * 1024 * 1024;
+    private static final int CHUNK = 32;
+
+    private final ForkJoinPool pool;
+
+    public FileTreeOps(int parallelism) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), p -> {
+            var t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("ServerFabric-Host-io-" + t.getPoolIndex());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+    }
+
+    public int parallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Copies {@code src} into {@code dst}. Files matching {@code linkable} are hard linked instead of
+     * copied while the filesystem allows it. Returns true if at least one hard link was made.
+     */
+    public boolean copyTree(Path src, Path dst, List<PathMatcher> linkable) throws IOException {
+        return copyTree(src, dst, linkable, List.of());
+    }
+
+    /** Same, leaving out the subtrees {@code skip} (relative to src). */
+    public boolean copyTree(Path src, Path dst, List<PathMatcher> linkable, List<Path> skip) throws IOException {
+        if (!Files.isDirectory(src)) {
+            Files.createDirectories(dst.toAbsolutePath().getParent());
+            copyFile(src, dst);
+            return false;
+        }
+
+        List<Path> dirs = new ArrayList<>();
+        List<Path> files = new ArrayList<>();
+
+        Files.walkFileTree(src, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                Path rel = src.relativize(dir);
+                if (skip.contains(rel)) return FileVisitResult.SKIP_SUBTREE;
+                dirs.add(rel);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(src.relativize(file));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // walk order is pre-order, so parents are always created before children
+        for (Path d : dirs) Files.createDirectories(dst.resolve(d.toString()));
+
+        AtomicBoolean linked = new AtomicBoolean(false);
+        AtomicBoolean linkBroken = new AtomicBoolean(linkable.isEmpty());
+
+        forEach(files, rel -> {
+            Path from = src.resolve(rel);
+            Path to = dst.resolve(rel.toString());
+
+            if (!linkBroken.get() && matches(linkable, rel)) {
+                try {
+                    Files.createLink(to, from);
+                    linked.set(true);
+                    return;
+                } catch (UnsupportedOperationException | IOException e) {
+                    // cross-device or unsupported fs: stop trying for this tree
+                    linkBroken.set(true);
+                }
+            }
+            copyFile(from, to);
+        });
+
+        return linked.get();
+    }
+
+    /** Deletes a tree: files in parallel, then directories deepest first. */
+    public void deleteTree(Path dir) throws IOException {
+        if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) return;
+
+        List<Path> dirs = new ArrayList<>();
+        List<Path> files = new ArrayList<>();
+
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) {
+                dirs.add(d);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        forEach(files, Files::deleteIfExists);
+
+        dirs.sort(Comparator.comparingInt(Path::getNameCount).reversed());
+        for (Path d : dirs) Files.deleteIfExists(d);
+    }
+
+    /** Runs {@code action} over {@code items} on the I/O pool, rethrowing the first IOException. */
+    public <T> void forEach(List<T> items, IoConsumer<T> action) throws IOException {
+        if (items.isEmpty()) return;
+        try {
+            pool.invoke(new Chunk<>(items, 0, items.size(), action));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    static void copyFile(Path from, Path to) throws IOException {
+        long size = Files.size(from);
+        if (size < TRANSFER_THRESHOLD) {
+            Files.copy(from, to, StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+
+        try (FileChannel in = FileChannel.open(from, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(to, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long pos = 0;
+            while (pos < size) {
+                long n = in.transferTo(pos, size - pos, out);
+                if (n <= 0) break;
+                pos += n;
+            }
+        }
+
+        Files.setLastModifiedTime(to, Files.getLastModifiedTime(from));
+        PosixFileAttributeView view = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+        if (view != null) {
+            PosixFileAttributes attrs = Files.readAttributes(from, PosixFileAttributes.class);
+            view.setPermissions(attrs.permissions());
+        }
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, Path rel) {
+        for (PathMatcher m : matchers) {
+            if (m.matches(rel)) return true;
+        }
+        return false;
+    }
+
+    @SuppressWarnings("serial") // fork/join task, never serialized
+    private static final class Chunk<T> extends RecursiveAction {
+        private final List<T> items;
+        private final int from, to;
+        private final IoConsumer<T> action;
+
+        Chunk(List<T> items, int from, int to, IoConsumer<T> action) {
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        action.accept(items.get(i));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Chunk<>(items, from, mid, action), new Chunk<>(items, mid, to, action));
+        }
+    }
+}
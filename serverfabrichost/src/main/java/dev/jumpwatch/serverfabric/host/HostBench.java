@@ -0,0 +1,230 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small built-in benchmarks. Results go to stdout; nothing is kept on disk.
+ *
+ * {@code --bench-copy <dir> [parallelism]} times copy/delete engines locally.
+ * {@code --bench-status <baseUrl> <token> <template> [creates]} load-tests a running host.
+ */
+final class HostBench {
+
+    private HostBench() {}
+
+    /** Compares the old single-threaded walk copy/delete against {@link FileTreeOps}. */
+    static void copy(Path src, int parallelism, int rounds) throws IOException {
+        if (!Files.isDirectory(src)) throw new IOException("Not a directory: " + src);
+
+        long[] totals = sizeOf(src);
+        System.out.println("[Bench] " + src + ": " + totals[0] + " files, " + totals[1] / (1024 * 1024) + " MB, "
+                + "parallelism=" + parallelism + ", rounds=" + rounds);
+
+        Path scratch = Files.createTempDirectory(src.toAbsolutePath().getParent(), ".serverfabric-bench-");
+        FileTreeOps ops = new FileTreeOps(parallelism);
+        try {
+            // warm the page cache so both sides read from memory
+            walkCopy(src, scratch.resolve("warmup"));
+            walkDelete(scratch.resolve("warmup"));
+
+            long seqCopy = 0, seqDelete = 0, parCopy = 0, parDelete = 0;
+            for (int i = 0; i < rounds; i++) {
+                Path a = scratch.resolve("seq-" + i);
+                long t0 = System.nanoTime();
+                walkCopy(src, a);
+                long t1 = System.nanoTime();
+                walkDelete(a);
+                long t2 = System.nanoTime();
+                seqCopy += t1 - t0;
+                seqDelete += t2 - t1;
+
+                Path b = scratch.resolve("par-" + i);
+                t0 = System.nanoTime();
+                ops.copyTree(src, b, List.of());
+                t1 = System.nanoTime();
+                ops.deleteTree(b);
+                t2 = System.nanoTime();
+                parCopy += t1 - t0;
+                parDelete += t2 - t1;
+            }
+
+            report("copy   sequential", seqCopy / rounds, totals[1]);
+            report("copy   parallel  ", parCopy / rounds, totals[1]);
+            report("delete sequential", seqDelete / rounds, totals[1]);
+            report("delete parallel  ", parDelete / rounds, totals[1]);
+        } finally {
+            ops.deleteTree(scratch);
+            ops.shutdown();
+        }
+    }
+
+    private static final int STATUS_CLIENTS = 4;
+    private static final long STATUS_PAUSE_MS = 10;
+
+    /**
+     * Measures /status latency on a running host, idle and then while {@code creates} creates of
+     * {@code template} run concurrently. The created instances are deleted afterwards.
+     */
+    static void status(String baseUrl, String token, String template, int creates) throws Exception {
+        String base = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(threads).build();
+
+        try {
+            List<Long> idle = new ArrayList<>();
+            for (int i = 0; i < 200; i++) idle.add(timeStatus(http, base, token));
+            reportLatency("/status idle        ", idle);
+
+            String prefix = "bench-" + HexFormat.of().toHexDigits(ThreadLocalRandom.current().nextInt());
+            List<Long> busy = Collections.synchronizedList(new ArrayList<>());
+            AtomicBoolean creating = new AtomicBoolean(true);
+            AtomicInteger failed = new AtomicInteger();
+            CountDownLatch pollersDone = new CountDownLatch(STATUS_CLIENTS);
+
+            for (int c = 0; c < STATUS_CLIENTS; c++) {
+                threads.submit(() -> {
+                    try {
+                        while (creating.get()) {
+                            busy.add(timeStatus(http, base, token));
+                            Thread.sleep(STATUS_PAUSE_MS); // a polling client, not a CPU hog
+                        }
+                    } catch (Exception e) {
+                        System.out.println("[Bench] status client failed: " + e.getMessage());
+                    } finally {
+                        pollersDone.countDown();
+                    }
+                });
+            }
+
+            long t0 = System.nanoTime();
+            CountDownLatch createsDone = new CountDownLatch(creates);
+            for (int i = 0; i < creates; i++) {
+                String name = prefix + "-" + i;
+                threads.submit(() -> {
+                    try {
+                        int code = post(http, base, token, "/server/create",
+                                "{\"template\":\"" + template + "\",\"name\":\"" + name + "\"}");
+                        if (code != 200) failed.incrementAndGet();
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                    } finally {
+                        createsDone.countDown();
+                    }
+                });
+            }
+            createsDone.await();
+            long createNanos = System.nanoTime() - t0;
+            creating.set(false);
+            pollersDone.await();
+
+            System.out.printf("[Bench] %d creates in %.1f ms (%d failed)%n", creates, createNanos / 1_000_000.0, failed.get());
+            reportLatency("/status under load  ", busy);
+
+            for (int i = 0; i < creates; i++) {
+                post(http, base, token, "/server/delete", "{\"name\":\"" + prefix + "-" + i + "\"}");
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    private static long timeStatus(HttpClient http, String base, String token) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(base + "/status"))
+                .header("Authorization", "Bearer " + token)
+                .GET().build();
+        long t0 = System.nanoTime();
+        HttpResponse<byte[]> res = http.send(req, HttpResponse.BodyHandlers.ofByteArray());
+        if (res.statusCode() != 200) throw new IOException("HTTP " + res.statusCode());
+        return System.nanoTime() - t0;
+    }
+
+    private static int post(HttpClient http, String base, String token, String path, String body) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(base + path))
+                .header("Authorization", "Bearer " + token)
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        return http.send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static void reportLatency(String label, List<Long> nanos) {
+        if (nanos.isEmpty()) {
+            System.out.println("[Bench] " + label + " no samples");
+            return;
+        }
+        List<Long> sorted = new ArrayList<>(nanos);
+        Collections.sort(sorted);
+        System.out.printf("[Bench] %s n=%-6d p50 %7.2f ms  p99 %7.2f ms  max %7.2f ms%n", label, sorted.size(),
+                pct(sorted, 0.50) / 1e6, pct(sorted, 0.99) / 1e6, sorted.get(sorted.size() - 1) / 1e6);
+    }
+
+    private static long pct(List<Long> sorted, double p) {
+        int idx = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, idx)));
+    }
+
+    private static void report(String label, long nanos, long bytes) {
+        double ms = nanos / 1_000_000.0;
+        double mbps = bytes / (1024.0 * 1024.0) / (nanos / 1_000_000_000.0);
+        System.out.printf("[Bench] %s %9.1f ms  %8.1f MB/s%n", label, ms, mbps);
+    }
+
+    private static long[] sizeOf(Path dir) throws IOException {
+        long[] out = { 0, 0 };
+        try (var s = Files.walk(dir)) {
+            s.filter(Files::isRegularFile).forEach(p -> {
+                out[0]++;
+                try { out[1] += Files.size(p); } catch (IOException ignored) {}
+            });
+        }
+        return out;
+    }
+
+    // the pre-FileTreeOps implementation, kept here as the baseline
+    private static void walkCopy(Path src, Path dst) throws IOException {
+        try (var stream = Files.walk(src)) {
+            stream.forEach(from -> {
+                try {
+                    Path to = dst.resolve(src.relativize(from).toString());
+                    if (Files.isDirectory(from)) {
+                        Files.createDirectories(to);
+                        return;
+                    }
+                    Files.createDirectories(to.getParent());
+                    Files.copy(from, to, StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void walkDelete(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (var s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try { Files.deleteIfExists(p); }
+                catch (IOException e) { throw new UncheckedIOException(e); }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
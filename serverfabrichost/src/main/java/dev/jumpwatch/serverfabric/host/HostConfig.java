@@ -17,7 +17,26 @@ public record HostConfig(
         int portMin,
         int portMax,
         String javaCmd,
-        List<String> jvmArgs
+        List<String> jvmArgs,
+        String provisioning,
+        int ioParallelism,
+        int trashReapFilesPerSecond,
+        long portQuarantineMs,
+        String httpExecutor,
+        int maxConcurrentOps,
+        int consoleBufferKb,
+        int logMaxFileMb,
+        int logRotateHours,
+        int logKeepFiles,
+        int consoleMirrorKbPerSec,
+        int processSampleSeconds,
+        long memoryBudgetMb,
+        int memoryBudgetPercent,
+        long jvmOverheadMb,
+        int maxConcurrentStarts,
+        int startSlotTimeoutSeconds,
+        int shutdownTimeoutSeconds,
+        boolean appCds
 ) {
     public static HostConfig load(Path file) throws IOException {
         Properties p = new Properties();
@@ -43,7 +62,61 @@ public record HostConfig(
                 .filter(s -> !s.isEmpty())
                 .toList();
 
-        return new HostConfig(bindHost, hostId, bindPort, token, rootPath, portMin, portMax, javaCmd, jvmArgs);
+        // AUTO | REFLINK | HARDLINK | BLOB | COPY
+        String provisioning = p.getProperty("provisioning", "AUTO").trim();
+
+        // threads used for parallel template copies and deletes
+        int ioParallelism = Integer.parseInt(p.getProperty("ioParallelism",
+                String.valueOf(Runtime.getRuntime().availableProcessors())).trim());
+
+        // deleted instances are moved to rootPath/trash/ and removed in the background at this pace
+        int trashReapFilesPerSecond = Integer.parseInt(p.getProperty("trashReapFilesPerSecond", "2000").trim());
+
+        // a released port is not handed out again until this cooldown has passed (TIME_WAIT, proxy caches)
+        long portQuarantineMs = Long.parseLong(p.getProperty("portQuarantineMs", "60000").trim());
+
+        // VIRTUAL: one virtual thread per HTTP request | POOL: the old fixed platform thread pool
+        String httpExecutor = p.getProperty("httpExecutor", "VIRTUAL").trim();
+
+        // create/start/stop/delete/command run on this many threads, whatever the HTTP executor is
+        int maxConcurrentOps = Integer.parseInt(p.getProperty("maxConcurrentOps", "8").trim());
+
+        // per-instance in-memory console ring served by /server/console
+        int consoleBufferKb = Integer.parseInt(p.getProperty("consoleBufferKb", "256").trim());
+
+        // instances/<name>/logs/serverfabric-console.log rotates at this size or age; older segments are gzipped
+        int logMaxFileMb = Integer.parseInt(p.getProperty("logMaxFileMb", "16").trim());
+        int logRotateHours = Integer.parseInt(p.getProperty("logRotateHours", "24").trim());
+        int logKeepFiles = Integer.parseInt(p.getProperty("logKeepFiles", "10").trim());
+
+        // instance output copied to the host's stdout, per instance; 0 = off
+        int consoleMirrorKbPerSec = Integer.parseInt(p.getProperty("consoleMirrorKbPerSec", "8").trim());
+
+        // CPU/RSS/threads/IO of every instance are read from /proc this often for /metrics; 0 = off
+        int processSampleSeconds = Integer.parseInt(p.getProperty("processSampleSeconds", "5").trim());
+
+        // starts are refused once the -Xmx (+ jvmOverheadMb each) of running instances would exceed the budget;
+        // memoryBudgetMb=0 means memoryBudgetPercent of physical RAM
+        long memoryBudgetMb = Long.parseLong(p.getProperty("memoryBudgetMb", "0").trim());
+        int memoryBudgetPercent = Integer.parseInt(p.getProperty("memoryBudgetPercent", "85").trim());
+        long jvmOverheadMb = Long.parseLong(p.getProperty("jvmOverheadMb", "256").trim());
+
+        // instances STARTING at once; the next queued start goes as soon as one is ready (or after the slot timeout)
+        int maxConcurrentStarts = Integer.parseInt(p.getProperty("maxConcurrentStarts",
+                String.valueOf(Math.max(2, Runtime.getRuntime().availableProcessors() / 2))).trim());
+        int startSlotTimeoutSeconds = Integer.parseInt(p.getProperty("startSlotTimeoutSeconds", "120").trim());
+
+        // on host shutdown all instances are stopped in parallel and killed if still alive after this; 0 = leave them
+        int shutdownTimeoutSeconds = Integer.parseInt(p.getProperty("shutdownTimeoutSeconds", "60").trim());
+
+        // per-template AppCDS archives: the first start trains one, later starts load it (needs Java 13+)
+        boolean appCds = Boolean.parseBoolean(p.getProperty("appCds", "true").trim());
+
+        return new HostConfig(bindHost, hostId, bindPort, token, rootPath, portMin, portMax, javaCmd, jvmArgs,
+                provisioning, ioParallelism, trashReapFilesPerSecond, portQuarantineMs, httpExecutor, maxConcurrentOps,
+                consoleBufferKb, logMaxFileMb, logRotateHours, logKeepFiles, consoleMirrorKbPerSec,
+                processSampleSeconds, memoryBudgetMb, memoryBudgetPercent, jvmOverheadMb,
+                maxConcurrentStarts, startSlotTimeoutSeconds, shutdownTimeoutSeconds, appCds);
     }
 
     private static String require(Properties p, String key) throws IOException {
@@ -3,22 +3,49 @@ package dev.jumpwatch.serverfabric.host;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 public final class HostHttpApi {
+    private static final long MAX_STATUS_WAIT_MS = 30_000;
+    private static final long EVENT_KEEPALIVE_MS = 15_000;
+    private static final long MAX_CONSOLE_WAIT_MS = 30_000;
+    private static final long MAX_BULK_WAIT_MS = 600_000;
+    private static final int DEFAULT_CONSOLE_BYTES = 16 * 1024;
+
     private final String token;
     private final InstanceManager mgr;
+    private final ExecutorService ops;
+    // bulk creates, bakes and drains run for minutes; a virtual thread each keeps them out of both pools
+    private final ExecutorService jobs = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("ServerFabric-Host-job-", 0).factory());
     private final ObjectMapper om = new ObjectMapper();
 
-    public HostHttpApi(String token, InstanceManager mgr) {
+    /**
+     * {@code ops} runs the slow handlers (copies, deletes, process launches, stdin writes) so they can't
+     * tie up the request threads that serve /status and the other cheap endpoints. Jobs that take minutes
+     * (bulk, bake, drain, blob gc) get their own virtual thread instead so they can't hold up those handlers.
+     */
+    public HostHttpApi(String token, InstanceManager mgr, ExecutorService ops) {
         this.token = token;
         this.mgr = mgr;
+        this.ops = ops;
     }
 
     public void register(HttpServer server) {
-        server.createContext("/server/create", ex -> handleAuthed(ex, () -> {
+        server.createContext("/server/create", ex -> handleAuthedOp(ex, () -> {
             var req = om.readTree(readBody(ex));
             String template = req.path("template").asText("");
             String name = req.path("name").asText("");
@@ -26,25 +53,57 @@ public final class HostHttpApi {
             writeJson(ex, 200, om.writeValueAsString(res));
         }));
 
-        server.createContext("/server/start", ex -> handleAuthed(ex, () -> {
+        // POST /server/bulk {"template":"mg","count":20,"prefix":"cup","start":true,"waitMs":120000}  ("names":[...] instead of count/prefix)
+        // Streams NDJSON: one line per instance step (CREATED, QUEUED, FAILED, STATE), then {"event":"DONE",...}.
+        server.createContext("/server/bulk", ex -> handleAuthedJob(ex, () -> {
+            var req = om.readTree(readBody(ex));
+            List<String> names = new ArrayList<>();
+            for (var n : req.path("names")) names.add(n.asText(""));
+            long waitMs = Math.min(MAX_BULK_WAIT_MS, Math.max(0, req.path("waitMs").asLong(0)));
+
+            LineStream lines = new LineStream(ex);
+            try {
+                var res = mgr.createBulk(req.path("template").asText(""), names, req.path("count").asInt(0),
+                        req.path("prefix").asText(""), req.path("start").asBoolean(true), waitMs,
+                        e -> lines.write(om.valueToTree(e)));
+                ObjectNode done = om.createObjectNode().put("event", "DONE");
+                done.setAll((ObjectNode) om.valueToTree(res));
+                lines.write(done);
+            } catch (Exception e) {
+                // before the first line this is a plain JSON error; after it, the stream ends with an ERROR line
+                if (!lines.started()) throw e;
+                String msg = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+                lines.write(om.createObjectNode().put("event", "ERROR").put("error", msg));
+            } finally {
+                lines.close();
+            }
+        }));
+
+        server.createContext("/server/claim", ex -> handleAuthedOp(ex, () -> {
+            var req = om.readTree(readBody(ex));
+            var res = mgr.claim(req.path("template").asText(""));
+            writeJson(ex, 200, om.writeValueAsString(res));
+        }));
+
+        server.createContext("/server/start", ex -> handleAuthedOp(ex, () -> {
             var req = om.readTree(readBody(ex));
             mgr.start(req.path("name").asText(""));
             writeJson(ex, 200, "{\"ok\":true}");
         }));
 
-        server.createContext("/server/stop", ex -> handleAuthed(ex, () -> {
+        server.createContext("/server/stop", ex -> handleAuthedOp(ex, () -> {
             var req = om.readTree(readBody(ex));
             mgr.stop(req.path("name").asText(""));
             writeJson(ex, 200, "{\"ok\":true}");
         }));
 
-        server.createContext("/server/delete", ex -> handleAuthed(ex, () -> {
+        server.createContext("/server/delete", ex -> handleAuthedOp(ex, () -> {
             var req = om.readTree(readBody(ex));
             mgr.delete(req.path("name").asText(""));
             writeJson(ex, 200, "{\"ok\":true}");
         }));
 
-        server.createContext("/server/command", ex -> handleAuthed(ex, () -> {
+        server.createContext("/server/command", ex -> handleAuthedOp(ex, () -> {
             var req = om.readTree(readBody(ex));
             String name = req.path("name").asText("");
             String cmd = req.path("cmd").asText("");
@@ -52,6 +111,50 @@ public final class HostHttpApi {
             writeJson(ex, 200, "{\"ok\":true}");
         }));
 
+        // GET /server/console?name=<n>&bytes=<N>             last N bytes (default 16 KB)
+        // GET /server/console?name=<n>&from=<off>&wait=<ms>  output after absolute offset, long-polled
+        // Raw console bytes; X-Console-Start/End are absolute offsets, pass End as the next "from".
+        server.createContext("/server/console", ex -> handleAuthed(ex, () -> {
+            Map<String, String> q = query(ex);
+            ConsoleBuffer console = mgr.console(q.getOrDefault("name", ""));
+
+            long from = parseLong(q.get("from"), -1);
+            ConsoleBuffer.Slice slice;
+            if (from >= 0) {
+                long waitMs = Math.min(MAX_CONSOLE_WAIT_MS, Math.max(0, parseLong(q.get("wait"), 0)));
+                int max = (int) Math.min(console.capacity(), parseLong(q.get("bytes"), console.capacity()));
+                slice = console.read(from, max, waitMs);
+            } else {
+                slice = console.tail((int) Math.min(console.capacity(), parseLong(q.get("bytes"), DEFAULT_CONSOLE_BYTES)));
+            }
+
+            ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            ex.getResponseHeaders().set("X-Console-Start", String.valueOf(slice.start()));
+            ex.getResponseHeaders().set("X-Console-End", String.valueOf(slice.end()));
+            ex.getResponseHeaders().set("X-Console-Truncated", String.valueOf(slice.truncated()));
+            ex.sendResponseHeaders(200, slice.data().length == 0 ? -1 : slice.data().length);
+            if (slice.data().length > 0) ex.getResponseBody().write(slice.data());
+            ex.getResponseBody().close();
+        }));
+
+        // GET /server/crash?name=<n>  restart counts, crash loop flag and the last console lines of the latest crash
+        server.createContext("/server/crash", ex -> handleAuthed(ex, () -> {
+            Map<String, String> q = query(ex);
+            writeJson(ex, 200, om.writeValueAsString(mgr.crashReport(q.getOrDefault("name", ""))));
+        }));
+
+        // POST /templates/bake {"template":"mg"}  boot the template once and provision from the result from now on
+        server.createContext("/templates/bake", ex -> handleAuthedJob(ex, () -> {
+            var req = om.readTree(readBody(ex));
+            writeJson(ex, 200, om.writeValueAsString(mgr.bake(req.path("template").asText(""))));
+        }));
+
+        // POST /templates/rebake {"template":"mg"}  same, after dropping the cached hash of the template's files
+        server.createContext("/templates/rebake", ex -> handleAuthedJob(ex, () -> {
+            var req = om.readTree(readBody(ex));
+            writeJson(ex, 200, om.writeValueAsString(mgr.rebake(req.path("template").asText(""))));
+        }));
+
         server.createContext("/templates", ex -> handleAuthed(ex, () -> {
             var node = om.createObjectNode();
             node.put("hostId", mgr.hostId());
@@ -60,24 +163,225 @@ public final class HostHttpApi {
             writeJson(ex, 200, om.writeValueAsString(node));
         }));
 
+        // GET /status                      full listing, ETag + If-None-Match -> 304
+        // GET /status?since=<v>&wait=<ms>   blocks until the version moves past v, then returns only what changed
+        //                                  (&epoch=<e>: v is from that host run; another run's gets a full listing)
         server.createContext("/status", ex -> handleAuthed(ex, () -> {
-            writeJson(ex, 200, om.writeValueAsString(mgr.status()));
+            Map<String, String> q = query(ex);
+            long since = parseLong(q.get("since"), -1);
+            String epoch = q.get("epoch");
+
+            if (since >= 0 && (epoch == null || epoch.equals(mgr.statusEpoch()))) {
+                long waitMs = Math.min(MAX_STATUS_WAIT_MS, Math.max(0, parseLong(q.get("wait"), 0)));
+                long version = waitMs > 0 ? mgr.awaitStatusChange(since, waitMs) : mgr.statusVersion();
+                if (version == since) {
+                    writeNotModified(ex, etag(version));
+                    return;
+                }
+                var res = mgr.statusSince(since);
+                ex.getResponseHeaders().set("ETag", etag(res.version()));
+                writeJson(ex, 200, om.writeValueAsString(res));
+                return;
+            }
+
+            String current = etag(mgr.statusVersion());
+            if (current.equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+                writeNotModified(ex, current);
+                return;
+            }
+            var res = mgr.status();
+            ex.getResponseHeaders().set("ETag", etag(res.version()));
+            writeJson(ex, 200, om.writeValueAsString(res));
+        }));
+
+        // GET /events (Server-Sent Events). Resumes after Last-Event-ID (or ?since=); the first frame is HELLO
+        // with the current sequence, RESYNC means events were missed and the client should re-read /status.
+        server.createContext("/events", ex -> {
+            if (!authorized(ex)) {
+                try {
+                    writeJson(ex, 401, "{\"error\":\"unauthorized\"}");
+                } finally {
+                    ex.close();
+                }
+                return;
+            }
+            // streams live for hours; keep them off the request pool
+            Thread.ofVirtual().name("ServerFabric-Host-events-" + ex.getRemoteAddress()).start(() -> streamEvents(ex));
+        });
+
+        // POST /host/drain {"timeoutMs":60000}  stop everything in parallel, refuse starts until /host/resume
+        server.createContext("/host/drain", ex -> handleAuthedJob(ex, () -> {
+            var req = om.readTree(readBody(ex));
+            long timeoutMs = Math.max(0, req.path("timeoutMs").asLong(60_000));
+            writeJson(ex, 200, om.writeValueAsString(mgr.drain(timeoutMs)));
+        }));
+
+        server.createContext("/host/resume", ex -> handleAuthed(ex, () -> {
+            mgr.resume();
+            writeJson(ex, 200, "{\"ok\":true}");
+        }));
+
+        // GET /metrics  Prometheus text format (same bearer token as the rest of the API)
+        server.createContext("/metrics", ex -> handleAuthed(ex, () -> {
+            byte[] body = mgr.writeMetrics().getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            ex.sendResponseHeaders(200, body.length);
+            ex.getResponseBody().write(body);
+            ex.getResponseBody().close();
+        }));
+
+        server.createContext("/pool", ex -> handleAuthed(ex, () -> {
+            writeJson(ex, 200, om.writeValueAsString(mgr.pool().stats()));
+        }));
+
+        server.createContext("/blobs", ex -> handleAuthed(ex, () -> {
+            writeJson(ex, 200, om.writeValueAsString(mgr.blobStats()));
+        }));
+
+        // walks and deletes the whole blob tree
+        server.createContext("/blobs/gc", ex -> handleAuthedJob(ex, () -> {
+            writeJson(ex, 200, om.writeValueAsString(mgr.blobGc()));
         }));
     }
 
+    private void streamEvents(HttpExchange ex) {
+        EventBus bus = mgr.events();
+        String lastId = ex.getRequestHeaders().getFirst("Last-Event-ID");
+        long since = parseLong(lastId != null ? lastId : query(ex).get("since"), -1);
+
+        try (ex) {
+            ex.getResponseHeaders().set("Content-Type", "text/event-stream");
+            ex.getResponseHeaders().set("Cache-Control", "no-cache");
+            ex.sendResponseHeaders(200, 0);
+            OutputStream out = ex.getResponseBody();
+
+            long latest = bus.lastSeq();
+            boolean resume = since >= 0 && bus.canResume(since);
+            long cursor = resume ? since : latest;
+
+            // HELLO carries the resume point as its id so a client that drops right away resumes from the same place
+            writeFrame(out, cursor, "HELLO", "{\"hostId\":\"" + esc(mgr.hostId()) + "\",\"seq\":" + latest + "}");
+            if (since >= 0 && !resume) writeFrame(out, cursor, "RESYNC", "{}");
+            out.flush();
+
+            while (true) {
+                var batch = bus.after(cursor, EVENT_KEEPALIVE_MS);
+                if (batch.isEmpty()) {
+                    out.write(": keepalive\n\n".getBytes(StandardCharsets.UTF_8));
+                } else {
+                    if (batch.get(0).seq() != cursor + 1) {
+                        // fell behind the ring; everything before batch[0] is lost
+                        writeFrame(out, batch.get(0).seq() - 1, "RESYNC", "{}");
+                    }
+                    for (var e : batch) writeFrame(out, e.seq(), e.type(), om.writeValueAsString(e));
+                    cursor = batch.get(batch.size() - 1).seq();
+                }
+                out.flush();
+            }
+        } catch (IOException | InterruptedException ignored) {
+            // client went away
+        }
+    }
+
+    /**
+     * Newline-delimited JSON over a chunked 200, started by the first line. Writes come from several threads; once
+     * the client is gone the lines are dropped so the job itself still runs to the end.
+     */
+    private static final class LineStream {
+        private final HttpExchange ex;
+        private OutputStream out;
+        private boolean gone;
+
+        LineStream(HttpExchange ex) {
+            this.ex = ex;
+        }
+
+        synchronized boolean started() {
+            return out != null;
+        }
+
+        synchronized void write(ObjectNode line) {
+            if (gone) return;
+            try {
+                if (out == null) {
+                    ex.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+                    ex.sendResponseHeaders(200, 0);
+                    out = ex.getResponseBody();
+                }
+                out.write((line.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e) {
+                gone = true;
+            }
+        }
+
+        synchronized void close() {
+            if (out == null || gone) return;
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void writeFrame(OutputStream out, long id, String event, String data) throws IOException {
+        out.write(("id: " + id + "\nevent: " + event + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean authorized(HttpExchange ex) {
+        String auth = ex.getRequestHeaders().getFirst("Authorization");
+        return auth != null && auth.equals("Bearer " + token);
+    }
+
+    /** Like {@link #handleAuthed} but runs the action on the bounded ops executor. */
+    private void handleAuthedOp(HttpExchange ex, IoRunnable action) throws IOException {
+        handleAuthed(ex, () -> {
+            try {
+                ops.submit(() -> {
+                    action.run();
+                    return null;
+                }).get();
+            } catch (RejectedExecutionException e) {
+                throw new BusyException();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception c ? c : e;
+            }
+        });
+    }
+
+    /** Like {@link #handleAuthed} but hands the exchange to a job thread and returns right away. */
+    private void handleAuthedJob(HttpExchange ex, IoRunnable action) {
+        try {
+            jobs.execute(() -> {
+                try {
+                    handleAuthed(ex, action);
+                } catch (IOException ignored) {
+                    // client went away
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            ex.close();
+        }
+    }
+
     private void handleAuthed(HttpExchange ex, IoRunnable action) throws IOException {
+        long t0 = System.nanoTime();
         try {
-            String auth = ex.getRequestHeaders().getFirst("Authorization");
-            if (auth == null || !auth.equals("Bearer " + token)) {
+            if (!authorized(ex)) {
                 writeJson(ex, 401, "{\"error\":\"unauthorized\"}");
                 return;
             }
             action.run();
+        } catch (BusyException e) {
+            writeJson(ex, 503, "{\"error\":\"busy, too many operations queued\"}");
+        } catch (MemoryBudget.CapacityException e) {
+            writeJson(ex, 503, "{\"error\":\"" + esc(e.getMessage()) + "\"}");
         } catch (Exception e) {
             String msg = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
             writeJson(ex, 500, "{\"error\":\"" + esc(msg) + "\"}");
         } finally {
             ex.close();
+            mgr.metrics().observeHttp(ex.getHttpContext().getPath(), System.nanoTime() - t0);
         }
     }
 
@@ -94,7 +398,42 @@ public final class HostHttpApi {
         ex.getResponseBody().close();
     }
 
+    private static void writeNotModified(HttpExchange ex, String etag) throws IOException {
+        ex.getResponseHeaders().set("ETag", etag);
+        ex.sendResponseHeaders(304, -1);
+    }
+
+    private String etag(long version) {
+        return "\"" + mgr.statusEpoch() + "-" + version + "\"";
+    }
+
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> out = new HashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) return out;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String k = eq < 0 ? pair : pair.substring(0, eq);
+            String v = eq < 0 ? "" : pair.substring(eq + 1);
+            out.put(URLDecoder.decode(k, StandardCharsets.UTF_8), URLDecoder.decode(v, StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    private static long parseLong(String s, long def) {
+        if (s == null || s.isBlank()) return def;
+        try {
+            return Long.parseLong(s.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
     private static String esc(String s) { return s.replace("\\", "\\\\").replace("\"", "\\\""); }
 
     @FunctionalInterface interface IoRunnable { void run() throws Exception; }
+
+    private static final class BusyException extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
 }
\ No newline at end of file
@@ -2,19 +2,32 @@ package dev.jumpwatch.serverfabric.host;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
-import java.io.UncheckedIOException;
-import java.net.ServerSocket;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public final class InstanceManager {
 
     private final TemplateManager templateManager;
 
-    public record CreateResponse(String name, int port) {}
-    public record StatusItem(String name, int port, String state) {}
-    public record StatusResponse(String hostId, List<StatusItem> instances) {}
+    public record CreateResponse(String name, int port, String strategy) {}
+    public record StatusItem(String name, int port, String state, int players, int restarts, long version) {}
+    /** {@code full=false}: only instances changed since the requested version, plus {@code removed} names. */
+    public record StatusResponse(String hostId, long version, String epoch, boolean full, List<StatusItem> instances,
+                                 List<String> removed, Capacity capacity) {}
+    /** What this host can still take, so the proxy can place new instances where they fit. */
+    public record Capacity(long memoryBudgetMb, long memoryReservedMb, long memoryFreeMb, int portsFree,
+                           int startsQueued) {}
+    public record ClaimResponse(boolean claimed, String name, int port) {}
 
     private final HostConfig cfg;
     private final Path root;
@@ -22,39 +35,395 @@ public final class InstanceManager {
     private final Path instances;
     private final String hostId;
 
-    private final int portMin, portMax;
     private final Map<String, ManagedInstance> live = new ConcurrentHashMap<>();
-    private final Set<Integer> reservedPorts = Collections.synchronizedSet(new HashSet<>());
+    private final PortAllocator ports;
     private final ObjectMapper om = new ObjectMapper();
+    private final InstanceProvisioner provisioner;
+    private final InstancePool pool;
+    private final BlobStore blobs;
+    private final FileTreeOps ops;
+    private final TrashReaper trash;
+    private final InstanceRegistry registry;
+    private final StateJournal journal;
+    private final StatusTracker statusTracker = new StatusTracker();
+    private final EventBus events = new EventBus();
+    // two drain threads keep up with hundreds of consoles; output is bursty, not continuous
+    private final ProcessSupervisor supervisor = new ProcessSupervisor(2);
+    // kept across restarts of an instance so a crash's last output stays readable
+    private final Map<String, ConsoleBuffer> consoles = new ConcurrentHashMap<>();
+    private final ConsoleLogWriter consoleLogs;
+    // compiled console patterns, keyed by their definition so template edits get a fresh matcher
+    private final Map<String, OutputPatterns> outputPatterns = new ConcurrentHashMap<>();
+    private final Metrics metrics = new Metrics();
+    private final ProcessSampler sampler = new ProcessSampler();
+    private final MemoryBudget memory;
+    private final StartScheduler starts;
+    private final RestartSupervisor restarts;
+    private final CdsArchives cds; // null when appCds=false
+    private final JarHashes jarHashes = new JarHashes();
+    private final RuntimeCache runtimeCache;
+    private volatile boolean draining;
+    // template boots for baking, queued with the start scheduler under names no instance can have
+    private final Map<String, StartScheduler.Launcher> bakeBoots = new ConcurrentHashMap<>();
+    private final Object launchLock = new Object();
+    private final ExecutorService background = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ServerFabric-Host-background");
+        t.setDaemon(true);
+        return t;
+    });
+    // hot standbys only start once nothing a player is waiting for is queued
+    private static final int STANDBY_PRIORITY_PENALTY = 1000;
 
     public InstanceManager(HostConfig cfg) throws IOException {
         this.cfg = cfg;
         this.root = cfg.rootPath();
         this.templates = root.resolve("templates");
         this.instances = root.resolve("instances");
-        this.portMin = cfg.portMin();
-        this.portMax = cfg.portMax();
+        this.ports = new PortAllocator(cfg.portMin(), cfg.portMax(), cfg.portQuarantineMs());
         this.hostId = cfg.hostId();
-        this.templateManager = new TemplateManager(templates, om);
+        this.ops = new FileTreeOps(cfg.ioParallelism());
+        this.templateManager = new TemplateManager(templates, root.resolve("baked"), om, ops);
+        this.trash = new TrashReaper(root.resolve("trash"), cfg.trashReapFilesPerSecond());
+        this.blobs = new BlobStore(root.resolve("blobs"), om, ops);
+        this.provisioner = new InstanceProvisioner(cfg.provisioning(), blobs, ops);
+        this.pool = new InstancePool(this, templateManager, root.resolve("pool"));
+        this.registry = new InstanceRegistry(instances, root.resolve("instances.idx"), om);
+        this.journal = new StateJournal(root.resolve("state.journal"), registry, om);
+        this.memory = new MemoryBudget(cfg.memoryBudgetMb(), cfg.memoryBudgetPercent(), cfg.jvmOverheadMb());
+        this.starts = new StartScheduler(cfg.maxConcurrentStarts(), cfg.startSlotTimeoutSeconds() * 1000L,
+                this::launch, metrics.startQueueWait);
+        this.restarts = new RestartSupervisor(supervisor, this::queueStart);
+        this.cds = cfg.appCds() ? new CdsArchives(root.resolve("cds"), cfg.javaCmd(), jarHashes) : null;
+        this.runtimeCache = new RuntimeCache(root.resolve("runtime"), ops, jarHashes);
+        this.consoleLogs = new ConsoleLogWriter(cfg.logMaxFileMb() * 1024L * 1024L, cfg.logRotateHours() * 3_600_000L,
+                cfg.logKeepFiles(), cfg.consoleMirrorKbPerSec() * 1024L);
 
         Files.createDirectories(templates);
         Files.createDirectories(instances);
+        trash.start();
+        if (sampler.available() && cfg.processSampleSeconds() > 0) {
+            supervisor.every(sampler::sampleAll, cfg.processSampleSeconds() * 1000L);
+        }
 
         loadExisting();
         autoStartMarkedInstances();
+
+        try {
+            blobs.gc(liveTrees());
+        } catch (IOException e) {
+            System.out.println("[ServerFabric-Host] Blob GC failed: " + e.getMessage());
+        }
     }
 
     public String hostId() { return hostId; }
 
+    public InstancePool pool() { return pool; }
+
+    public EventBus events() { return events; }
+
+    public Metrics metrics() { return metrics; }
+
+    public BlobStore.Stats blobStats() throws IOException {
+        return blobs.stats(hostId);
+    }
+
+    public BlobStore.GcResult blobGc() throws IOException {
+        return blobs.gc(liveTrees());
+    }
+
+    /** Blob store manifests still needed: one per template and per baked version on disk. */
+    private List<String> liveTrees() throws IOException {
+        List<String> out = new ArrayList<>();
+        for (String t : listTemplates()) out.addAll(templateManager.trees(t));
+        return out;
+    }
+
     public CreateResponse createFromTemplate(String templateName, String instanceName) throws IOException {
-        requireName(instanceName);
-        if (templateName == null || templateName.isBlank()) throw new IOException("Template required");
+        return create(templateName, instanceName, false);
+    }
+
+    /** Creates an instance that stays hidden from /status until claimed (see InstancePool hot tier). */
+    void createStandby(String templateName, String instanceName) throws IOException {
+        create(templateName, instanceName, true);
+    }
+
+    private CreateResponse create(String templateName, String instanceName, boolean standby, int port,
+                                  TemplateManager.Resolved resolved) throws IOException {
+        long t0 = System.nanoTime();
+        CreateResponse res = doCreate(templateName, instanceName, standby, port, resolved);
+        metrics.createDuration.observeNanos(System.nanoTime() - t0);
+        return res;
+    }
+
+    private CreateResponse create(String templateName, String instanceName, boolean standby) throws IOException {
+        return create(templateName, instanceName, standby, -1, null);
+    }
 
-        Path templateDir = templates.resolve(templateName);
+    /**
+     * {@code port}: taken for this instance by a bulk create, or -1 to allocate one; given back if the create fails.
+     * {@code resolved}: the bulk job's template resolution, or null to resolve here.
+     */
+    private CreateResponse doCreate(String templateName, String instanceName, boolean standby, int port,
+                                    TemplateManager.Resolved resolved) throws IOException {
         Path instanceDir = instances.resolve(instanceName);
+        InstanceMeta meta = null;
+        String strategy = "POOL";
+        try {
+            requireName(instanceName);
+            if (templateName == null || templateName.isBlank()) throw new IOException("Template required");
+            if (registry.get(instanceName) != null || Files.exists(instanceDir)) {
+                throw new IOException("Instance already exists: " + instanceName);
+            }
+
+            TemplateMeta tm = templateManager.get(templateName);
+            if (InstancePool.isPooled(tm)) meta = pool.claim(templateName, instanceName, instanceDir);
+        } catch (IOException e) {
+            if (port >= 0) ports.release(port);
+            throw e;
+        }
+
+        if (meta != null) {
+            if (port >= 0) ports.release(port); // a pooled copy comes with its own port
+        } else {
+            Provisioned p = provision(templateName, instanceDir, instanceName, port, resolved);
+            meta = p.meta();
+            strategy = p.strategy().name();
+        }
+
+        if (standby) {
+            meta.standby = true;
+            writeMeta(instanceDir, meta);
+        }
+        registry.put(meta);
+        statusChanged(instanceName, "CREATED");
+        return new CreateResponse(instanceName, meta.port, strategy);
+    }
 
-        if (!Files.isDirectory(templateDir)) throw new IOException("Template not found: " + templateName);
-        if (Files.exists(instanceDir)) throw new IOException("Instance already exists: " + instanceName);
+    /** Hands out a RUNNING hot standby of the template, or claimed=false if none is ready. */
+    public ClaimResponse claim(String templateName) throws IOException {
+        if (templateName == null || templateName.isBlank()) throw new IOException("Template required");
+
+        String name = pool.claimHot(templateName);
+        if (name == null) return new ClaimResponse(false, null, 0);
+
+        InstanceMeta meta = registry.get(name);
+        if (meta == null) throw new IOException("Instance not found: " + name);
+        meta.standby = false;
+        meta.lastUpdated = System.currentTimeMillis();
+        save(meta);
+        statusChanged(name, "CREATED");
+        return new ClaimResponse(true, name, meta.port);
+    }
+
+    /**
+     * One step of a bulk create: CREATED, QUEUED (handed to the start scheduler), FAILED (create or start, see
+     * {@code error}) or STATE (a started instance changed state while the job waits for it).
+     */
+    public record BulkEvent(String event, String name, int port, String strategy, String state, String error, long ms) {}
+    public record BulkResult(String template, int requested, int created, int queued, int failed, int running,
+                             long tookMs) {}
+
+    /**
+     * Creates {@code names}, or {@code count} free names "&lt;prefix&gt;-N", from one template as a single job. The
+     * ports are taken in one batch up front, the copies run in parallel, and with {@code start} every instance is
+     * queued with the start scheduler as soon as its copy is done, so the first ones boot while the rest are still
+     * copying. Each step goes to {@code progress} (from the job's threads). With {@code waitMs > 0} the call also
+     * waits that long for the started instances to come up or go down and reports their state changes.
+     */
+    public BulkResult createBulk(String templateName, List<String> names, int count, String prefix, boolean start,
+                                 long waitMs, Consumer<BulkEvent> progress) throws IOException {
+        long t0 = System.currentTimeMillis();
+        if (draining) throw new IOException("Host is draining, not creating instances");
+        if (templateName == null || templateName.isBlank()) throw new IOException("Template required");
+        if (!Files.isDirectory(templates.resolve(templateName))) throw new IOException("Template not found: " + templateName);
+
+        List<String> todo = new ArrayList<>(new LinkedHashSet<>(names));
+        if (todo.isEmpty()) {
+            if (count < 1) throw new IOException("count must be at least 1");
+            if (count > ports.capacity()) throw new IOException("count exceeds the port range (" + ports.capacity() + ")");
+            todo = freeNames(prefix == null || prefix.isBlank() ? templateName : prefix, count);
+        }
+        for (String n : todo) requireName(n);
+
+        // every copy of the batch comes from the same tree, even if a rebake lands halfway through
+        TemplateManager.Resolved resolved = templateManager.acquire(templateName);
+        try {
+            return createBulk(templateName, todo, start, waitMs, progress, resolved, t0);
+        } finally {
+            templateManager.release(templateName, resolved);
+        }
+    }
+
+    private BulkResult createBulk(String templateName, List<String> todo, boolean start, long waitMs,
+                                  Consumer<BulkEvent> progress, TemplateManager.Resolved resolved, long t0)
+            throws IOException {
+        if (resolved.stale()) bakeInBackground(templateName);
+        int[] batch = ports.allocate(todo.size());
+        long since = events.lastSeq();
+
+        AtomicInteger created = new AtomicInteger(), queued = new AtomicInteger(), failed = new AtomicInteger();
+        Set<String> made = ConcurrentHashMap.newKeySet();
+        Set<String> waiting = ConcurrentHashMap.newKeySet();
+        int requested = todo.size();
+        int threads = Math.min(todo.size(), ops.parallelism());
+        AtomicInteger threadId = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "ServerFabric-Host-bulk-" + threadId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> jobs = new ArrayList<>(todo.size());
+            for (int i = 0; i < todo.size(); i++) {
+                String name = todo.get(i);
+                int port = batch[i];
+                jobs.add(workers.submit(() -> {
+                    long c0 = System.nanoTime();
+                    CreateResponse res;
+                    try {
+                        res = create(templateName, name, false, port, resolved);
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        progress.accept(new BulkEvent("FAILED", name, 0, null, null, e.getMessage(), 0));
+                        return;
+                    }
+                    created.incrementAndGet();
+                    made.add(name);
+                    progress.accept(new BulkEvent("CREATED", name, res.port(), res.strategy(), "STOPPED", null,
+                            (System.nanoTime() - c0) / 1_000_000));
+                    if (!start) return;
+
+                    try {
+                        start(name);
+                        queued.incrementAndGet();
+                        waiting.add(name);
+                        ManagedInstance.State st = stateOf(name);
+                        progress.accept(new BulkEvent("QUEUED", name, res.port(), null, st == null ? null : st.name(),
+                                null, 0));
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        progress.accept(new BulkEvent("FAILED", name, res.port(), null, "STOPPED", e.getMessage(), 0));
+                    }
+                }));
+            }
+            for (Future<?> f : jobs) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Bulk create interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Bulk create failed: " + e.getCause(), e.getCause());
+        } finally {
+            workers.shutdown();
+            // nothing may still be copying from the tree once the caller releases it
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (workers.awaitTermination(1, TimeUnit.MINUTES)) break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+
+        if (waitMs > 0) awaitBulk(waiting, since, System.currentTimeMillis() + waitMs, progress);
+
+        int running = 0;
+        for (String n : made) if (stateOf(n) == ManagedInstance.State.RUNNING) running++;
+        long took = System.currentTimeMillis() - t0;
+        System.out.println("[Host] Bulk create of " + requested + " x " + templateName + ": " + created.get()
+                + " created, " + queued.get() + " queued, " + failed.get() + " failed in " + took + " ms");
+        return new BulkResult(templateName, requested, created.get(), queued.get(), failed.get(), running, took);
+    }
+
+    /** Follows the event bus from {@code since} until every instance in {@code waiting} is up or down again. */
+    private void awaitBulk(Set<String> waiting, long since, long deadline, Consumer<BulkEvent> progress) {
+        long cursor = since;
+        try {
+            while (!waiting.isEmpty()) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) return;
+                List<EventBus.Event> batch = events.after(cursor, left);
+                if (batch.isEmpty()) continue;
+                boolean gap = batch.get(0).seq() != cursor + 1;
+                for (EventBus.Event e : batch) {
+                    if ("STATE".equals(e.type()) && waiting.contains(e.name())) {
+                        progress.accept(new BulkEvent("STATE", e.name(), e.port(), null, e.state(), null, 0));
+                        if (settled(e.state())) waiting.remove(e.name());
+                    }
+                }
+                cursor = batch.get(batch.size() - 1).seq();
+                if (gap) {
+                    // fell behind the ring; ask the instances directly
+                    for (String n : List.copyOf(waiting)) {
+                        ManagedInstance.State st = stateOf(n);
+                        if (st != null && settled(st.name())) waiting.remove(n);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean settled(String state) {
+        return "RUNNING".equals(state) || "CRASHED".equals(state) || "CRASH_LOOP".equals(state) || "STOPPED".equals(state);
+    }
+
+    private List<String> freeNames(String prefix, int count) {
+        List<String> out = new ArrayList<>(count);
+        for (int i = 1; out.size() < count; i++) {
+            String n = prefix + "-" + i;
+            if (registry.get(n) == null && !Files.exists(instances.resolve(n))) out.add(n);
+        }
+        return out;
+    }
+
+    ManagedInstance.State stateOf(String instanceName) {
+        ManagedInstance mi = live.get(instanceName);
+        if (mi != null) return mi.getState();
+        if (starts.isQueued(instanceName)) return ManagedInstance.State.QUEUED;
+        if (restarts.restartPending(instanceName)) return ManagedInstance.State.CRASHED;
+        if (restarts.crashLooping(instanceName)) return ManagedInstance.State.CRASH_LOOP;
+        return null;
+    }
+
+    record Provisioned(InstanceMeta meta, InstanceProvisioner.Strategy strategy) {}
+
+    /**
+     * Materialises a template into {@code targetDir}, allocates a port and writes instance.json.
+     * Used for normal creates and for pool refills (where targetDir lives under pool/).
+     */
+    Provisioned provision(String templateName, Path targetDir, String instanceName) throws IOException {
+        return provision(templateName, targetDir, instanceName, -1, null);
+    }
+
+    private Provisioned provision(String templateName, Path targetDir, String instanceName, int port,
+                                  TemplateManager.Resolved resolved) throws IOException {
+        try {
+            return doProvision(templateName, targetDir, instanceName, port, resolved);
+        } catch (IOException e) {
+            if (port >= 0) ports.release(port);
+            throw e;
+        }
+    }
+
+    private Provisioned doProvision(String templateName, Path targetDir, String instanceName, int reserved,
+                                    TemplateManager.Resolved resolved) throws IOException {
+        if (!Files.isDirectory(templates.resolve(templateName))) throw new IOException("Template not found: " + templateName);
+        if (Files.exists(targetDir)) throw new IOException("Instance already exists: " + instanceName);
+
+        // the baked tree when it is current; the template itself (and a rebake in the background) otherwise
+        if (resolved == null) {
+            resolved = templateManager.acquire(templateName);
+            try {
+                if (resolved.stale()) bakeInBackground(templateName);
+                return doProvision(templateName, targetDir, instanceName, reserved, resolved);
+            } finally {
+                templateManager.release(templateName, resolved);
+            }
+        }
+        Path templateDir = resolved.dir();
 
         TemplateMeta tm = templateManager.get(templateName);
 
@@ -75,72 +444,114 @@ public final class InstanceManager {
                 : null;
 
         // Pool + persistence flags
-        boolean pooled = tm != null && tm.pool != null && tm.pool.enabled;
+        boolean pooled = InstancePool.isPooled(tm);
         boolean persistent = (tm == null || tm.data == null) ? true : tm.data.persistent;
 
-        // Copy template -> instance
-        System.out.println("[Host] Copying template " + templateName + " -> " + instanceName);
-        copyDir(templateDir, instanceDir);
-        System.out.println("[Host] Copy done for " + instanceName);
-
-        int port = allocatePort();
-        writeOrUpdateServerProperties(instanceDir, port);
-
-        InstanceMeta meta = new InstanceMeta();
-        meta.name = instanceName;
-        meta.template = templateName;
-        meta.port = port;
-        meta.jar = jarName;
-        meta.pooled = pooled;
-        meta.persistent = persistent;
-        meta.jvmArgs = resolvedJvmArgs; // can be null
-        meta.autoStart = false;
-        meta.lastState = "STOPPED";
-        meta.lastUpdated = System.currentTimeMillis();
-
-        writeMeta(instanceDir, meta);
+        List<String> immutable = (tm != null && tm.provisioning != null) ? tm.provisioning.immutable : null;
 
-        // Optional: also validate jar exists in instance after copy
-        Path instanceJar = instanceDir.resolve(jarName);
-        if (!Files.exists(instanceJar)) {
-            throw new IOException("Jar was not copied into instance: " + instanceJar);
+        // runtime dirs with a shared copy are linked in below rather than copied
+        boolean sharedRuntime = tm != null && tm.runtime != null && tm.runtime.shared && tm.runtime.dirs != null;
+        List<String> linked = List.of();
+        if (sharedRuntime) {
+            try {
+                linked = runtimeCache.linkable(templateName, templateJar, tm.runtime.dirs);
+            } catch (IOException e) {
+                System.out.println("[Host] Shared runtime cache not checked for " + instanceName + ": " + e.getMessage());
+            }
         }
 
-        return new CreateResponse(instanceName, port);
-    }
+        // Provision template -> instance
+        long t0 = System.nanoTime();
+        InstanceProvisioner.Strategy strategy = provisioner.provision(resolved.tree(templateName), templateDir, targetDir,
+                immutable, linked);
+        System.out.println("[Host] Provisioned " + instanceName + " from " + templateName
+                + " via " + strategy + " in " + (System.nanoTime() - t0) / 1_000_000 + " ms");
+
+        int port = reserved >= 0 ? reserved : ports.allocate();
+        try {
+            writeOrUpdateServerProperties(targetDir, port);
+
+            InstanceMeta meta = new InstanceMeta();
+            meta.name = instanceName;
+            meta.template = templateName;
+            meta.port = port;
+            meta.jar = jarName;
+            meta.pooled = pooled;
+            meta.persistent = persistent;
+            meta.jvmArgs = resolvedJvmArgs; // can be null
+            meta.source = resolved.source();
+            meta.autoStart = false;
+            meta.lastState = "STOPPED";
+            meta.lastUpdated = System.currentTimeMillis();
+
+            writeMeta(targetDir, meta);
 
+            // Optional: also validate jar exists in instance after copy
+            Path instanceJar = targetDir.resolve(jarName);
+            if (!Files.exists(instanceJar)) {
+                throw new IOException("Jar was not copied into instance: " + instanceJar);
+            }
+            if (sharedRuntime) {
+                try {
+                    runtimeCache.link(templateName, instanceJar, targetDir, tm.runtime.dirs);
+                } catch (IOException e) {
+                    System.out.println("[Host] Shared runtime cache not linked into " + instanceName + ": " + e.getMessage());
+                }
+            }
 
+            return new Provisioned(meta, strategy);
+        } catch (IOException e) {
+            if (reserved < 0) ports.release(port); // a reserved port is released by provision()
+            throw e;
+        }
+    }
+
+    /**
+     * Queues a start with the {@link StartScheduler}. Problems that would make the launch fail anyway (missing
+     * jar, more memory than the whole budget) are reported here; the launch itself happens when a slot is free.
+     */
     public void start(String instanceName) throws IOException {
         requireName(instanceName);
-        Path dir = instances.resolve(instanceName);
-        if (!Files.isDirectory(dir)) throw new IOException("Instance not found: " + instanceName);
+        // a start by hand ends a crash loop and replaces a pending automatic restart
+        restarts.clear(instanceName);
+        queueStart(instanceName);
+    }
+
+    private void queueStart(String instanceName) throws IOException {
+        if (draining) throw new IOException("Host is draining, not starting " + instanceName);
+        InstanceMeta meta = registry.get(instanceName);
+        if (meta == null) throw new IOException("Instance not found: " + instanceName);
 
         ManagedInstance existing = live.get(instanceName);
-        if (existing != null) {
-            if (existing.isAlive()) throw new IOException("Instance already running: " + instanceName);
-            // stale entry, clean it
-            live.remove(instanceName);
-        }
+        if (existing != null && existing.isAlive()) throw new IOException("Instance already running: " + instanceName);
+        if (starts.isQueued(instanceName)) return;
 
-        InstanceMeta meta = readMeta(dir);
-        if (meta == null) throw new IOException("Missing instance.json for: " + instanceName);
+        Path jarPath = jarPath(meta);
+        if (!Files.exists(jarPath)) throw new IOException("Missing jar: " + jarPath.getFileName());
+        memory.requireFits(instanceName, memory.footprint(jvmArgs(meta)));
 
-        String jarName = (meta.jar != null && !meta.jar.isBlank()) ? meta.jar : "paper.jar";
+        TemplateMeta tm = templateManager.get(meta.template);
+        int priority = tm == null || tm.start == null ? 0 : tm.start.priority;
+        if (meta.standby) priority -= STANDBY_PRIORITY_PENALTY;
+
+        // persisted as QUEUED: a host restart before the launch still brings it back
+        meta.lastState = ManagedInstance.State.QUEUED.name();
+        meta.autoStart = true;
+        meta.lastUpdated = System.currentTimeMillis();
+        journal.append(meta);
+        if (starts.submit(instanceName, priority)) statusChanged(instanceName, "STATE");
+    }
 
+    private List<String> jvmArgs(InstanceMeta meta) {
         List<String> jvmArgs = new ArrayList<>();
         if (meta.jvmArgs != null && meta.jvmArgs.length > 0) jvmArgs.addAll(Arrays.asList(meta.jvmArgs));
         else jvmArgs.addAll(cfg.jvmArgs());
+        return jvmArgs;
+    }
 
-        Path jarPath = dir.resolve(jarName);
-        if (!Files.exists(jarPath)) throw new IOException("Missing jar: " + jarPath.getFileName());
-
-        // persist intent + starting
-        meta.lastState = "STARTING";
-        meta.autoStart = true;
-        meta.lastUpdated = System.currentTimeMillis();
-        writeMeta(dir, meta);
-        TemplateMeta tm = templateManager.get(meta.template);
+    private record Readiness(ManagedInstance.ReadinessType type, String contains, String host, long timeoutMs) {}
 
+    private static Readiness readinessOf(TemplateMeta tm) {
         ManagedInstance.ReadinessType rType = ManagedInstance.ReadinessType.LOG_CONTAINS;
         String rContains = "Done (";
         String rHost = "127.0.0.1";
@@ -156,107 +567,647 @@ public final class InstanceManager {
             if (tm.readiness.host != null && !tm.readiness.host.isBlank()) rHost = tm.readiness.host;
             if (tm.readiness.timeoutMs > 0) rTimeout = tm.readiness.timeoutMs;
         }
+        return new Readiness(rType, rContains, rHost, rTimeout);
+    }
+
+    private Path jarPath(InstanceMeta meta) {
+        String jarName = (meta.jar != null && !meta.jar.isBlank()) ? meta.jar : "paper.jar";
+        return instances.resolve(meta.name).resolve(jarName);
+    }
+
+    /** Called by the {@link StartScheduler} when a slot is free; false if the memory budget can't take it yet. */
+    private boolean launch(String instanceName) throws IOException {
+        StartScheduler.Launcher bakeBoot = bakeBoots.get(instanceName);
+        if (bakeBoot != null) return bakeBoot.launch(instanceName);
+
+        try {
+            return doLaunch(instanceName);
+        } catch (IOException | RuntimeException e) {
+            launchFailed(instanceName);
+            throw e;
+        }
+    }
+
+    /** A queued start that won't happen: not retried on the next host boot, and waiters see it settle. */
+    private void launchFailed(String instanceName) {
+        InstanceMeta meta = registry.get(instanceName);
+        if (meta == null) return;
+        meta.autoStart = false;
+        meta.lastState = "STOPPED";
+        meta.lastUpdated = System.currentTimeMillis();
+        journal.append(meta);
+        statusChanged(instanceName, "STATE");
+    }
+
+    private boolean doLaunch(String instanceName) throws IOException {
+        // stop() cancels and looks up the live entry under the same lock, so it either aborts this launch or sees it
+        synchronized (launchLock) {
+            return launchLocked(instanceName);
+        }
+    }
+
+    private boolean launchLocked(String instanceName) throws IOException {
+        InstanceMeta meta = registry.get(instanceName);
+        if (meta == null) throw new IOException("Instance not found: " + instanceName);
+        Path dir = instances.resolve(instanceName);
+
+        ManagedInstance existing = live.get(instanceName);
+        if (existing != null) {
+            if (existing.isAlive()) {
+                // started by another path meanwhile; nothing to launch, and its journal state is already right
+                starts.beginLaunch(instanceName);
+                starts.settled(instanceName);
+                return true;
+            }
+            // stale entry whose exit callback hasn't run yet; the new run replaces it and that callback becomes a no-op
+            live.remove(instanceName, existing);
+        }
+
+        List<String> jvmArgs = jvmArgs(meta);
+        Path jarPath = jarPath(meta);
+        if (!Files.exists(jarPath)) throw new IOException("Missing jar: " + jarPath.getFileName());
+
+        try {
+            memory.reserve(instanceName, memory.footprint(jvmArgs));
+        } catch (MemoryBudget.CapacityException e) {
+            return false;
+        }
+        capacityChanged(meta);
+
+        if (!starts.beginLaunch(instanceName)) {
+            // stopped (and journalled STOPPED) while it waited for this slot
+            releaseMemory(instanceName);
+            starts.settled(instanceName);
+            return true;
+        }
+
+        // persist intent + starting
+        meta.lastState = "STARTING";
+        meta.autoStart = true;
+        meta.lastUpdated = System.currentTimeMillis();
+        TemplateMeta tm;
+        try {
+            journal.append(meta);
+            tm = templateManager.get(meta.template);
+        } catch (IOException | RuntimeException e) {
+            releaseMemory(instanceName);
+            throw e;
+        }
+
+        Readiness r = readinessOf(tm);
+        ManagedInstance.ReadinessType rType = r.type();
+        List<String> launchArgs = jvmArgs;
+        if (cds != null) {
+            launchArgs = new ArrayList<>(jvmArgs);
+            launchArgs.addAll(cds.argsFor(instanceName, meta.template, jarPath, jvmArgs));
+        }
+        // the exit callback runs on the supervisor after the process is already reported dead; by then a restart may
+        // have put a new run under the same name, whose entry, reservation and slot must be left alone
+        ManagedInstance[] self = new ManagedInstance[1];
         ManagedInstance mi = new ManagedInstance(
-                cfg.javaCmd(), jvmArgs, instanceName, dir, jarPath,
-                rType, rContains, rHost, meta.port, rTimeout,
+                cfg.javaCmd(), launchArgs, instanceName, dir, jarPath,
+                rType, outputPatternsFor(tm, rType == ManagedInstance.ReadinessType.LOG_CONTAINS, r.contains()),
+                r.host(), meta.port, r.timeoutMs(),
                 (n, st) -> { try { onInstanceStateChanged(n, st); } catch (Exception ignored) {} },
-                (n, code, stopping) -> live.remove(n)
+                (n, code, stopping) -> {
+                    ManagedInstance gone = self[0];
+                    if (gone == null || !live.remove(n, gone)) return;
+                    consoleLogs.detach(n);
+                    sampler.untrack(n);
+                    releaseMemory(n);
+                    starts.settled(n);
+                    if (cds != null) cds.exited(n, code == 0 && gone.getState() == ManagedInstance.State.STOPPED);
+                    if (gone.getState() == ManagedInstance.State.CRASHED && !draining) {
+                        onCrashed(n, code, gone.console());
+                    }
+                    statusChanged(n, "STATE");
+                },
+                (n, action, event) -> statusChanged(n, action == OutputPatterns.Action.CRASH ? "CRASH_SIGNATURE" : event),
+                supervisor,
+                consoles.computeIfAbsent(instanceName, n -> new ConsoleBuffer(cfg.consoleBufferKb() * 1024))
         );
 
-        mi.start();
+        self[0] = mi;
+        // registered before start() so the STARTING callback already sees it in status
         live.put(instanceName, mi);
+        consoleLogs.attach(instanceName, dir.resolve("logs"), mi.console());
+        try {
+            mi.start();
+            sampler.track(instanceName, mi.pid());
+        } catch (IOException e) {
+            live.remove(instanceName, mi);
+            consoleLogs.detach(instanceName);
+            if (cds != null) cds.exited(instanceName, false);
+            releaseMemory(instanceName);
+            throw e;
+        }
+        // no readiness signal: it will never leave STARTING on its own
+        if (rType == ManagedInstance.ReadinessType.NONE) starts.settled(instanceName);
+        return true;
     }
 
 
     public void stop(String instanceName) throws IOException {
         requireName(instanceName);
 
-        Path dir = instances.resolve(instanceName);
-        if (!Files.isDirectory(dir)) throw new IOException("Instance not found: " + instanceName);
+        InstanceMeta meta = registry.get(instanceName);
+        if (meta == null) throw new IOException("Instance not found: " + instanceName);
+
+        synchronized (launchLock) {
+            stopLocked(instanceName, meta);
+        }
+    }
 
+    private void stopLocked(String instanceName, InstanceMeta meta) {
         ManagedInstance mi = live.get(instanceName);
 
-        // Always persist "intentional stop" even if it's already dead
-        InstanceMeta meta = readMeta(dir);
-        if (meta != null) {
-            meta.autoStart = false; // intentional stop should NOT auto-start on host reboot
-            meta.lastState = "STOPPING"; // let exit watcher set STOPPED
+        if (starts.cancel(instanceName) | restarts.clear(instanceName)) {
+            meta.autoStart = false;
+            meta.lastState = "STOPPED";
             meta.lastUpdated = System.currentTimeMillis();
-            writeMeta(dir, meta);
+            journal.append(meta);
+            statusChanged(instanceName, "STATE");
+            return;
         }
 
-        // If not running, treat as already stopped
-        if (mi == null || !mi.isAlive()) {
-            live.remove(instanceName); // cleanup stale entry
-            return;
+        // Always persist "intentional stop" even if it's already dead
+        meta.autoStart = false; // intentional stop should NOT auto-start on host reboot
+        meta.lastState = "STOPPING"; // let exit watcher set STOPPED
+        meta.lastUpdated = System.currentTimeMillis();
+        journal.append(meta);
+
+        // If not running, treat as already stopped; a dead entry is cleaned up by its exit callback
+        if (mi == null || !mi.isAlive()) return;
+
+        long[] t = stopTimeouts(meta);
+        mi.stop(t[0], t[1]);
+    }
+
+    private void onCrashed(String name, int exitCode, ConsoleBuffer console) {
+        InstanceMeta meta = registry.get(name);
+        if (meta == null) return;
+        TemplateMeta.Restart policy = null;
+        try {
+            TemplateMeta tm = templateManager.get(meta.template);
+            if (tm != null) policy = tm.restart;
+        } catch (IOException ignored) {
         }
+        if (!restarts.crashed(name, exitCode, policy, console)) return;
 
-        mi.stopGraceful();
+        // left down, also across host restarts, until someone starts it again
+        meta.autoStart = false;
+        meta.lastState = ManagedInstance.State.CRASH_LOOP.name();
+        meta.lastUpdated = System.currentTimeMillis();
+        journal.append(meta);
+        statusChanged(name, "CRASH_LOOP");
     }
 
-    public void delete(String instanceName) throws IOException {
+    /** Restart counts and the last console lines of an instance's most recent crash. */
+    public RestartSupervisor.CrashReport crashReport(String instanceName) throws IOException {
         requireName(instanceName);
-        ManagedInstance mi = live.get(instanceName);
-        if (mi != null && mi.isAlive()) throw new IOException("Stop instance first: " + instanceName);
+        if (registry.get(instanceName) == null) throw new IOException("Instance not found: " + instanceName);
+        return restarts.report(instanceName);
+    }
 
-        Path dir = instances.resolve(instanceName);
-        if (!Files.exists(dir)) throw new IOException("Instance not found: " + instanceName);
-        deleteDir(dir);
+    /** Boots the template once in a scratch directory and saves the result as its next baked version. */
+    public TemplateManager.BakeInfo bake(String templateName) throws IOException {
+        requireName(templateName);
+        if (draining) throw new IOException("Host is draining, not baking " + templateName);
+        return templateManager.bake(templateName, this::bootForBake);
     }
 
-    public StatusResponse status() throws IOException {
-        List<StatusItem> items = new ArrayList<>();
-        try (DirectoryStream<Path> ds = Files.newDirectoryStream(instances)) {
-            for (Path p : ds) {
-                if (!Files.isDirectory(p)) continue;
+    /** Forgets the template's cached file hash (edits the watcher can't see) and bakes it from what is on disk now. */
+    public TemplateManager.BakeInfo rebake(String templateName) throws IOException {
+        requireName(templateName);
+        templateManager.forgetInputs(templateName);
+        return bake(templateName);
+    }
 
-                String name = p.getFileName().toString();
-                InstanceMeta meta = readMeta(p);
+    private void bakeInBackground(String templateName) {
+        if (templateManager.isBaking(templateName)) return;
+        background.execute(() -> {
+            try {
+                TemplateManager.Resolved r = templateManager.resolve(templateName);
+                if (r.stale() && !draining) bake(templateName);
+            } catch (IOException e) {
+                System.out.println("[Host] Bake of " + templateName + " failed: " + e.getMessage());
+            }
+        });
+    }
 
-                String state = "STOPPED";
-                ManagedInstance mi = live.get(name);
-                if (mi != null) {
-                    state = mi.getState().name();
+    /**
+     * Runs the scratch copy like an instance (own port, memory reservation, template JVM args and readiness),
+     * waits until it is ready and stops it. Only a clean exit counts; the tree of a killed server may be torn.
+     */
+    private void bootForBake(String templateName, TemplateMeta tm, Path dir) throws IOException {
+        // ':' is not allowed in instance names, so the reservation and start slot can't be mistaken for a real one's
+        String name = "bake:" + templateName;
+        Readiness r = readinessOf(tm);
+        if (r.type() == ManagedInstance.ReadinessType.NONE) {
+            throw new IOException("Baking needs a readiness signal, " + templateName + " has readiness NONE");
+        }
+        String jarName = tm.jar != null && !tm.jar.isBlank() ? tm.jar : "server.jar";
+        Path jar = dir.resolve(jarName);
+        if (!Files.exists(jar)) throw new IOException("Template jar missing: " + jarName);
+        List<String> jvmArgs = tm.jvm != null && tm.jvm.args != null && !tm.jvm.args.isEmpty() ? tm.jvm.args : cfg.jvmArgs();
+
+        ConsoleBuffer console = new ConsoleBuffer(cfg.consoleBufferKb() * 1024);
+        CompletableFuture<ManagedInstance.State> ready = new CompletableFuture<>();
+        CompletableFuture<Integer> exit = new CompletableFuture<>();
+        ManagedInstance[] booted = new ManagedInstance[1];
+        int[] port = {-1};
+        boolean[] abandoned = {false};
+
+        // admitted like any start, after the ones players are waiting for; launch() hands the name to this
+        bakeBoots.put(name, n -> {
+            synchronized (booted) {
+                if (abandoned[0]) throw new IOException("bake of " + templateName + " was abandoned");
+                try {
+                    memory.reserve(name, memory.footprint(jvmArgs));
+                } catch (MemoryBudget.CapacityException e) {
+                    return false;
                 }
+                try {
+                    port[0] = ports.allocate();
+                    writeOrUpdateServerProperties(dir, port[0]);
+                    booted[0] = new ManagedInstance(cfg.javaCmd(), jvmArgs, name, dir, jar,
+                            r.type(), outputPatternsFor(tm, r.type() == ManagedInstance.ReadinessType.LOG_CONTAINS, r.contains()),
+                            r.host(), port[0], r.timeoutMs(),
+                            (x, st) -> {
+                                if (st == ManagedInstance.State.STARTING) return;
+                                starts.settled(name);
+                                ready.complete(st);
+                            },
+                            (x, code, stopping) -> {
+                                starts.settled(name);
+                                ready.complete(ManagedInstance.State.CRASHED);
+                                exit.complete(code);
+                            },
+                            null, supervisor, console);
+                    booted[0].start();
+                    return true;
+                } catch (IOException | RuntimeException e) {
+                    ready.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        });
+
+        boolean ok = false;
+        try {
+            if (!starts.submit(name, -STANDBY_PRIORITY_PENALTY)) throw new IOException("a bake boot of " + templateName + " is already queued");
+
+            long timeoutMs = Math.max(1, tm.bake == null ? 600 : tm.bake.timeoutSeconds) * 1000L;
+            ManagedInstance.State st = ready.get(timeoutMs, TimeUnit.MILLISECONDS);
+            if (st != ManagedInstance.State.RUNNING) throw new IOException("server exited before it was ready");
+
+            long[] t = stopTimeouts(tm.stop);
+            booted[0].stop(t[0], t[1]);
+            int code = exit.get(t[0] + t[1] + 10_000, TimeUnit.MILLISECONDS);
+            if (code != 0) throw new IOException("server did not stop cleanly (exit " + code + ")");
+            ok = true;
+        } catch (TimeoutException e) {
+            throw new IOException("timed out waiting for " + name);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            if (!ok) {
+                String tail = new String(console.tail(2048).data(), java.nio.charset.StandardCharsets.UTF_8);
+                System.out.println("[Host] Bake of " + templateName + " failed, last output:\n" + tail);
+            }
+            ManagedInstance mi;
+            synchronized (booted) {
+                abandoned[0] = true;
+                mi = booted[0];
+            }
+            bakeBoots.remove(name);
+            starts.cancel(name);
+            if (mi != null && mi.isAlive()) {
+                mi.kill();
+                try {
+                    exit.get(10, TimeUnit.SECONDS);
+                } catch (Exception ignored) {
+                }
+            }
+            starts.settled(name);
+            if (port[0] >= 0) ports.release(port[0]);
+            releaseMemory(name);
+        }
+    }
+
+    /** {graceMs, killAfterMs} from the instance's template (stop.graceSeconds, stop.killAfterSeconds). */
+    private long[] stopTimeouts(InstanceMeta meta) {
+        TemplateMeta.Stop s = null;
+        try {
+            TemplateMeta tm = templateManager.get(meta.template);
+            if (tm != null) s = tm.stop;
+        } catch (IOException ignored) {
+        }
+        return stopTimeouts(s);
+    }
+
+    private static long[] stopTimeouts(TemplateMeta.Stop s) {
+        if (s == null) s = new TemplateMeta.Stop();
+        return new long[]{Math.max(0, s.graceSeconds) * 1000L, Math.max(0, s.killAfterSeconds) * 1000L};
+    }
+
+    public record DrainResult(int stopped, int killed, long tookMs) {}
+
+    public boolean draining() {
+        return draining;
+    }
 
-                items.add(new StatusItem(name, meta.port, state));
+    /**
+     * Drain mode: refuses new starts (queued ones stay queued) and stops every running instance at once, each
+     * through its stop pipeline squeezed into {@code timeoutMs}. Whatever is still alive at the deadline is killed.
+     * autoStart is left as it was, so a host restart brings the same instances back.
+     */
+    public DrainResult drain(long timeoutMs) {
+        draining = true;
+        starts.pause();
+        long t0 = System.currentTimeMillis();
+        long deadline = t0 + Math.max(0, timeoutMs);
+
+        List<ManagedInstance> running = new ArrayList<>();
+        List<CompletableFuture<Process>> exits = new ArrayList<>();
+        for (ManagedInstance mi : live.values()) {
+            if (!mi.isAlive()) continue;
+            InstanceMeta meta = registry.get(mi.name());
+            long[] t = meta == null ? new long[]{30_000, 10_000} : stopTimeouts(meta);
+            // leave a quarter of the window for SIGTERM, the rest for a clean "stop"
+            long kill = Math.min(t[1], timeoutMs / 4);
+            long grace = Math.min(t[0], Math.max(0, timeoutMs - kill));
+            running.add(mi);
+            exits.add(mi.stop(grace, kill));
+        }
+        if (!running.isEmpty()) {
+            System.out.println("[ServerFabric-Host] Draining " + running.size() + " instance(s), deadline " + timeoutMs + " ms");
+        }
+
+        try {
+            CompletableFuture.allOf(exits.toArray(CompletableFuture<?>[]::new))
+                    .get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (Exception ignored) {
+            // deadline reached (or interrupted): kill the rest below
+        }
+
+        int killed = 0;
+        for (ManagedInstance mi : running) {
+            if (!mi.isAlive()) continue;
+            System.out.println("[ServerFabric-Host] " + mi.name() + " still running at the drain deadline, killing");
+            mi.kill();
+            killed++;
+        }
+        if (killed > 0) {
+            try {
+                CompletableFuture.allOf(exits.toArray(CompletableFuture<?>[]::new)).get(5, TimeUnit.SECONDS);
+            } catch (Exception ignored) {
             }
         }
+        // exit callbacks (journal, events) run just after the process is gone; let them land before returning
+        long settle = System.currentTimeMillis() + 2000;
+        while (running.stream().anyMatch(mi -> live.get(mi.name()) == mi) && System.currentTimeMillis() < settle) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        return new DrainResult(running.size(), killed, System.currentTimeMillis() - t0);
+    }
+
+    /** Leaves drain mode; queued starts go ahead again. */
+    public void resume() {
+        draining = false;
+        starts.resume();
+    }
+
+    /** Console ring of an instance that has been started at least once since host boot. */
+    public ConsoleBuffer console(String instanceName) throws IOException {
+        requireName(instanceName);
+        ConsoleBuffer c = consoles.get(instanceName);
+        if (c == null) {
+            if (registry.get(instanceName) == null) throw new IOException("Instance not found: " + instanceName);
+            throw new IOException("No console output yet: " + instanceName);
+        }
+        return c;
+    }
+
+    public void delete(String instanceName) throws IOException {
+        requireName(instanceName);
+        InstanceMeta meta;
+        synchronized (launchLock) {
+            ManagedInstance mi = live.get(instanceName);
+            if (mi != null && mi.isAlive()) throw new IOException("Stop instance first: " + instanceName);
+
+            meta = registry.get(instanceName);
+            if (meta == null) throw new IOException("Instance not found: " + instanceName);
+            starts.cancel(instanceName);
+        }
+        Path dir = instances.resolve(instanceName);
+        restarts.forget(instanceName);
+        consoleLogs.detach(instanceName);
+        sampler.untrack(instanceName);
+        consoles.remove(instanceName);
+
+        if (meta.pooled && pool.recycle(meta, dir)) {
+            registry.remove(instanceName);
+            statusRemoved(meta, instanceName);
+            return;
+        }
+
+        discard(dir);
+        registry.remove(instanceName);
+        statusRemoved(meta, instanceName);
+        ports.release(meta.port);
+    }
+
+    public StatusResponse status() {
+        long version = statusTracker.version();
+        List<StatusItem> items = new ArrayList<>();
+        for (InstanceMeta meta : registry.all()) {
+            if (meta.standby) continue;
+            items.add(statusItem(meta));
+        }
         items.sort(Comparator.comparing(StatusItem::name));
-        return new StatusResponse(cfg.hostId(), items);
+        return new StatusResponse(cfg.hostId(), version, statusTracker.epoch(), true, items, List.of(), capacity());
     }
 
-    // ---- internals ----
+    /** Instances changed/removed after {@code since}; a full listing if the host can't tell (restart, too old). */
+    public StatusResponse statusSince(long since) {
+        if (!statusTracker.canDelta(since)) return status();
 
-    private void loadExisting() throws IOException {
-        try (DirectoryStream<Path> ds = Files.newDirectoryStream(instances)) {
-            for (Path p : ds) {
-                if (!Files.isDirectory(p)) continue;
-                Path metaFile = p.resolve("instance.json");
-                if (!Files.exists(metaFile)) continue;
-                InstanceMeta meta = readMeta(p);
-                reservedPorts.add(meta.port);
+        long version = statusTracker.version();
+        List<StatusItem> items = new ArrayList<>();
+        for (String name : statusTracker.changedSince(since)) {
+            InstanceMeta meta = registry.get(name);
+            if (meta == null || meta.standby) continue;
+            items.add(statusItem(meta));
+        }
+        items.sort(Comparator.comparing(StatusItem::name));
+        return new StatusResponse(cfg.hostId(), version, statusTracker.epoch(), false, items,
+                statusTracker.removedSince(since), capacity());
+    }
+
+    /** Random per host run; versions are only comparable within one. */
+    public String statusEpoch() {
+        return statusTracker.epoch();
+    }
+
+    public long statusVersion() {
+        return statusTracker.version();
+    }
+
+    /** Long-poll support: waits up to {@code waitMs} for the status version to move past {@code since}. */
+    public long awaitStatusChange(long since, long waitMs) throws InterruptedException {
+        return statusTracker.await(since, waitMs);
+    }
+
+    private StatusItem statusItem(InstanceMeta meta) {
+        ManagedInstance mi = live.get(meta.name);
+        ManagedInstance.State st = stateOf(meta.name);
+        return new StatusItem(meta.name, meta.port, st == null ? "STOPPED" : st.name(), mi == null ? 0 : mi.players(),
+                restarts.restarts(meta.name), statusTracker.versionOf(meta.name));
+    }
+
+    public Capacity capacity() {
+        long mb = 1024L * 1024L;
+        return new Capacity(memory.budgetBytes() / mb, memory.reservedBytes() / mb, memory.freeBytes() / mb,
+                // quarantined ports keep their bit set, so inUse() already counts them
+                ports.capacity() - ports.inUse(), starts.queueDepth());
+    }
+
+    private void releaseMemory(String name) {
+        memory.release(name);
+        starts.wake();
+        InstanceMeta meta = registry.get(name);
+        if (meta != null) capacityChanged(meta);
+    }
+
+    /** Visible instances bump the version through their own state change; standbys (hot pool) don't, so bump here. */
+    private void capacityChanged(InstanceMeta meta) {
+        if (meta.standby) statusTracker.bump();
+    }
+
+    /** Prometheus text exposition for GET /metrics. */
+    public String writeMetrics() {
+        StringBuilder sb = new StringBuilder(8192);
+
+        Map<String, Integer> byState = new TreeMap<>();
+        for (ManagedInstance.State s : ManagedInstance.State.values()) byState.put(s.name(), 0);
+        int standby = 0;
+        for (InstanceMeta meta : registry.all()) {
+            if (meta.standby) {
+                standby++;
+                continue;
             }
+            ManagedInstance.State st = stateOf(meta.name);
+            byState.merge(st == null ? "STOPPED" : st.name(), 1, Integer::sum);
+        }
+        Metrics.header(sb, "serverfabric_instances", "gauge", "Instances by state (standbys excluded)");
+        for (var e : byState.entrySet()) {
+            sb.append("serverfabric_instances{state=\"").append(e.getKey()).append("\"} ").append(e.getValue()).append('\n');
+        }
+        Metrics.header(sb, "serverfabric_standby_instances", "gauge", "Hot pool instances waiting to be claimed");
+        sb.append("serverfabric_standby_instances ").append(standby).append('\n');
+
+        Metrics.header(sb, "serverfabric_ports_capacity", "gauge", "Ports in the configured range");
+        sb.append("serverfabric_ports_capacity ").append(ports.capacity()).append('\n');
+        Metrics.header(sb, "serverfabric_ports_in_use", "gauge", "Ports assigned to instances");
+        sb.append("serverfabric_ports_in_use ").append(ports.inUse() - ports.quarantined()).append('\n');
+        Metrics.header(sb, "serverfabric_ports_quarantined", "gauge", "Released ports still cooling down");
+        sb.append("serverfabric_ports_quarantined ").append(ports.quarantined()).append('\n');
+
+        Metrics.header(sb, "serverfabric_memory_budget_bytes", "gauge", "Memory instances may reserve in total");
+        sb.append("serverfabric_memory_budget_bytes ").append(memory.budgetBytes()).append('\n');
+        Metrics.header(sb, "serverfabric_memory_reserved_bytes", "gauge", "Heap plus overhead reserved by running instances");
+        sb.append("serverfabric_memory_reserved_bytes ").append(memory.reservedBytes()).append('\n');
+
+        Metrics.header(sb, "serverfabric_start_queue_depth", "gauge", "Starts waiting for a slot or for memory");
+        sb.append("serverfabric_start_queue_depth ").append(starts.queueDepth()).append('\n');
+        Metrics.header(sb, "serverfabric_starts_in_progress", "gauge", "Admitted starts not yet ready");
+        sb.append("serverfabric_starts_in_progress ").append(starts.starting()).append('\n');
+        Metrics.header(sb, "serverfabric_starts_max_concurrent", "gauge", "maxConcurrentStarts");
+        sb.append("serverfabric_starts_max_concurrent ").append(starts.maxConcurrent()).append('\n');
+
+        Metrics.header(sb, "serverfabric_instance_restarts_total", "counter", "Automatic restarts after a crash");
+        sb.append("serverfabric_instance_restarts_total ").append(restarts.totalRestarts()).append('\n');
+
+        Metrics.header(sb, "serverfabric_runtime_caches", "gauge", "Shared runtime caches (one per server jar)");
+        try {
+            sb.append("serverfabric_runtime_caches ").append(runtimeCache.caches()).append('\n');
+        } catch (IOException ignored) {
         }
+        Metrics.header(sb, "serverfabric_runtime_cache_links_total", "counter", "Directories linked to a shared runtime cache instead of copied");
+        sb.append("serverfabric_runtime_cache_links_total ").append(runtimeCache.links()).append('\n');
+
+        Metrics.header(sb, "serverfabric_supervised_processes", "gauge", "Instance output pipes being drained");
+        sb.append("serverfabric_supervised_processes ").append(supervisor.supervised()).append('\n');
+
+        metrics.writeHistograms(sb);
+        sampler.write(sb);
+        return sb.toString();
     }
 
-    private int allocatePort() throws IOException {
-        for (int p = portMin; p <= portMax; p++) {
-            if (reservedPorts.contains(p)) continue;
-            if (isPortFree(p)) {
-                reservedPorts.add(p);
-                return p;
+    private OutputPatterns outputPatternsFor(TemplateMeta tm, boolean logReadiness, String readinessContains) {
+        StringBuilder key = new StringBuilder();
+        if (logReadiness) key.append("READY\0").append(readinessContains).append('\0');
+        if (tm != null && tm.patterns != null) {
+            for (TemplateMeta.Pattern p : tm.patterns) {
+                if (p != null) key.append(p.on).append('\0').append(p.match).append('\0');
             }
         }
-        throw new IOException("No free ports in range " + portMin + "-" + portMax);
+        return outputPatterns.computeIfAbsent(key.toString(), k -> OutputPatterns.of(tm, logReadiness, readinessContains));
     }
 
-    private static boolean isPortFree(int port) {
-        try (ServerSocket socket = new ServerSocket(port)) {
-            socket.setReuseAddress(true);
-            return true;
-        } catch (IOException ignored) {
-            return false;
+    /** Bumps the status version and publishes an event; standbys stay invisible until claimed. */
+    private void statusChanged(String name, String eventType) {
+        InstanceMeta meta = registry.get(name);
+        if (meta == null || meta.standby) return;
+        statusTracker.touch(name);
+        ManagedInstance.State st = stateOf(name);
+        events.publish(eventType, name, meta.port, st == null ? "STOPPED" : st.name());
+    }
+
+    private void statusRemoved(InstanceMeta meta, String name) {
+        if (meta.standby) return;
+        statusTracker.remove(name);
+        events.publish("DELETED", name, meta.port, "DELETED");
+    }
+
+    // ---- internals ----
+
+    private void loadExisting() throws IOException {
+        registry.load(this::readMeta);
+        journal.replayAndOpen();
+        for (InstanceMeta meta : registry.all()) {
+            ports.reserve(meta.port);
+            if (ManagedInstance.State.CRASH_LOOP.name().equals(meta.lastState)) restarts.markCrashLoop(meta.name);
+            if (meta.standby) pool.registerHot(meta.template, meta.name);
+        }
+
+        pool.loadExisting();
+        for (int port : pool.existingPorts()) ports.reserve(port);
+    }
+
+    void releasePort(int port) {
+        ports.release(port);
+    }
+
+    /** Replaces {@code target} inside an instance with a fresh copy of the same path from its template. */
+    void resetPath(String templateName, String rel, Path target) throws IOException {
+        discard(target);
+        TemplateManager.Resolved resolved = templateManager.acquire(templateName);
+        try {
+            Path src = resolved.dir().resolve(rel).normalize();
+            if (!Files.exists(src)) return;
+            TemplateMeta tm = templateManager.get(templateName);
+            provisioner.provision(src, target, (tm != null && tm.provisioning != null) ? tm.provisioning.immutable : null);
+        } finally {
+            templateManager.release(templateName, resolved);
         }
     }
 
@@ -294,12 +1245,25 @@ public final class InstanceManager {
         throw new IOException("Missing paper.jar/server.jar in " + dir);
     }
 
-    private void writeMeta(Path dir, InstanceMeta meta) throws IOException {
+    /** Persists a registry entry: in memory + index, plus its instance.json. */
+    private void save(InstanceMeta meta) throws IOException {
+        registry.put(meta);
+        writeMeta(instances.resolve(meta.name), meta);
+    }
+
+    void writeMeta(Path dir, InstanceMeta meta) throws IOException {
         Path file = dir.resolve("instance.json");
-        om.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), meta);
+        Path tmp = dir.resolve("instance.json.tmp");
+        om.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), meta);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 
-    private InstanceMeta readMeta(Path dir) throws IOException {
+    /** Registry entry of an instance, or null. */
+    InstanceMeta meta(String instanceName) {
+        return registry.get(instanceName);
+    }
+
+    InstanceMeta readMeta(Path dir) throws IOException {
         Path file = dir.resolve("instance.json");
         if (!Files.exists(file)) {
             // if someone manually made a folder, try best-effort
@@ -309,40 +1273,18 @@ public final class InstanceManager {
         return om.readValue(file.toFile(), InstanceMeta.class);
     }
 
-    private static void copyDir(Path src, Path dst) throws IOException {
-        try (var stream = Files.walk(src)) {
-            stream.forEach(from -> {
-                try {
-                    Path rel = src.relativize(from);
-                    Path to = dst.resolve(rel);
-
-                    if (Files.isDirectory(from)) {
-                        Files.createDirectories(to);
-                        return;
-                    }
-
-                    Files.createDirectories(to.getParent());
-                    Files.copy(from, to,
-                            StandardCopyOption.COPY_ATTRIBUTES,
-                            StandardCopyOption.REPLACE_EXISTING
-                    );
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
-            });
-        } catch (UncheckedIOException e) {
-            throw e.getCause();
-        }
+    void deleteDir(Path dir) throws IOException {
+        ops.deleteTree(dir);
     }
 
-    private static void deleteDir(Path dir) throws IOException {
-        if (!Files.exists(dir)) return;
-        Files.walk(dir)
-                .sorted(Comparator.reverseOrder())
-                .forEach(p -> {
-                    try { Files.deleteIfExists(p); }
-                    catch (IOException e) { throw new UncheckedIOException(e); }
-                });
+    /** Removes {@code path} without waiting: renamed into trash/ and reaped in the background. */
+    void discard(Path path) throws IOException {
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) return;
+        try {
+            trash.discard(path);
+        } catch (AtomicMoveNotSupportedException e) {
+            deleteDir(path);
+        }
     }
 
     private static void requireName(String name) throws IOException {
@@ -357,19 +1299,14 @@ public final class InstanceManager {
         ManagedInstance mi = live.get(instanceName);
         if (mi == null) throw new IOException("Not running: " + instanceName);
 
-        if (!mi.isAlive()) {
-            live.remove(instanceName);
-            throw new IOException("Not running: " + instanceName);
-        }
+        if (!mi.isAlive()) throw new IOException("Not running: " + instanceName);
 
         mi.sendCommand(cmd);
     }
 
     private void onInstanceStateChanged(String name, ManagedInstance.State st) throws IOException {
-        Path dir = instances.resolve(name);
-        if (!Files.isDirectory(dir)) return;
-
-        InstanceMeta meta = readMeta(dir);
+        InstanceMeta meta = registry.get(name);
+        if (meta == null) return;
 
         meta.lastState = st.name();
         meta.lastUpdated = System.currentTimeMillis();
@@ -382,20 +1319,44 @@ public final class InstanceManager {
             meta.autoStart = true;
         }
 
-        writeMeta(dir, meta);
+        journal.append(meta);
+        statusChanged(name, "STATE");
+        if (st != ManagedInstance.State.STARTING) starts.settled(name);
+
+        if (st == ManagedInstance.State.RUNNING) {
+            promoteRuntime(meta);
+            ManagedInstance mi = live.get(name);
+            if (mi != null) {
+                CdsArchives.Mode mode = cds == null ? CdsArchives.Mode.OFF : cds.mode(name);
+                metrics.startDuration(mode).observeNanos(System.nanoTime() - mi.startedNanos());
+            }
+        }
+    }
+    /** The first RUNNING instance of a template and jar seeds the shared runtime cache for the ones created after it. */
+    private void promoteRuntime(InstanceMeta meta) throws IOException {
+        TemplateMeta tm = templateManager.get(meta.template);
+        if (tm == null || tm.runtime == null || !tm.runtime.shared || tm.runtime.dirs == null) return;
+        Path jar = jarPath(meta);
+        Path dir = instances.resolve(meta.name);
+        List<String> dirs = tm.runtime.dirs;
+        background.execute(() -> {
+            try {
+                runtimeCache.promote(meta.template, jar, dir, dirs);
+            } catch (IOException e) {
+                System.out.println("[Host] Shared runtime cache from " + meta.name + " failed: " + e.getMessage());
+            }
+        });
     }
+
     private void autoStartMarkedInstances() throws IOException {
         List<String> toStart = new ArrayList<>();
 
-        try (DirectoryStream<Path> ds = Files.newDirectoryStream(instances)) {
-            for (Path p : ds) {
-                if (!Files.isDirectory(p)) continue;
-                InstanceMeta meta = readMeta(p);
-                if (meta.autoStart) {
-                    toStart.add(meta.name);
-                }
+        for (InstanceMeta meta : registry.all()) {
+            if (meta.autoStart) {
+                toStart.add(meta.name);
             }
         }
+        toStart.sort(String::compareTo);
 
         // Start them after scanning so one failure doesn't break scanning
         for (String name : toStart) {
@@ -408,29 +1369,12 @@ public final class InstanceManager {
         }
     }
 
+    /** Every transition is already journaled; this just makes it durable and folds it into the index. */
     public void persistAllLiveStates() {
-        for (var entry : live.entrySet()) {
-            String name = entry.getKey();
-            ManagedInstance mi = entry.getValue();
-            try {
-                ManagedInstance.State st = mi.getState();
-
-                Path dir = instances.resolve(name);
-                if (!Files.isDirectory(dir)) continue;
-
-                InstanceMeta meta = readMeta(dir);
-                meta.lastState = st.name();
-                meta.lastUpdated = System.currentTimeMillis();
-
-                // If it's alive-ish, keep autoStart so it comes back after host restart/crash
-                if (st == ManagedInstance.State.RUNNING || st == ManagedInstance.State.STARTING) {
-                    meta.autoStart = true;
-                }
-
-                writeMeta(dir, meta);
-            } catch (Exception e) {
-                System.out.println("[ServerFabric-Host] persistAllLiveStates failed for " + name + ": " + e.getMessage());
-            }
-        }
+        starts.shutdown();
+        background.shutdownNow();
+        consoleLogs.shutdown();
+        journal.close();
+        registry.shutdown();
     }
 }
\ No newline at end of file
@@ -15,6 +15,8 @@ public final class InstanceMeta {
     public boolean pooled = false;        // derived from template.json pool.enabled
     public boolean persistent = true;     // derived from template.json data.persistent
     public String[] jvmArgs = null;       // resolved args at create time (optional)
+    public boolean standby = false;       // hot standby, hidden from /status until claimed
+    public String source = null;          // template files + bake it was provisioned from (Resolved.source)
 
     public InstanceMeta() {}
 
@@ -0,0 +1,415 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Warm pool of provisioned, stopped instances per template (template.json "pool").
+ *
+ * Idle instances live under rootPath/pool/<template>/<id> so they never show up in /status.
+ * A create for a pooled template claims one by moving it into instances/, which is a rename
+ * on the same filesystem; copying and port allocation happen on the background refill thread.
+ *
+ * The hot tier (pool.hot) keeps instances RUNNING in instances/ with InstanceMeta.standby set,
+ * which hides them from /status until {@link #claimHot} hands one out.
+ */
+public final class InstancePool {
+
+    public record TemplateStats(String template, int idle, int minIdle, int maxIdle, long hits, long misses,
+                                int hot, int hotTarget, long hotHits, long hotMisses) {}
+    public record PoolResponse(String hostId, List<TemplateStats> templates) {}
+
+    private static final long SWEEP_SECONDS = 30;
+
+    private final InstanceManager mgr;
+    private final TemplateManager templateManager;
+    private final Path poolRoot;
+
+    private final Map<String, Deque<Path>> idle = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> hits = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> misses = new ConcurrentHashMap<>();
+    private final Set<String> refillQueued = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Deque<String>> hot = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> hotHits = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> hotMisses = new ConcurrentHashMap<>();
+    private final Set<String> retiring = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ServerFabric-Host-pool");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    InstancePool(InstanceManager mgr, TemplateManager templateManager, Path poolRoot) throws IOException {
+        this.mgr = mgr;
+        this.templateManager = templateManager;
+        this.poolRoot = poolRoot;
+        Files.createDirectories(poolRoot);
+    }
+
+    static boolean isPooled(TemplateMeta tm) {
+        return tm != null && tm.pool != null && tm.pool.enabled;
+    }
+
+    static int hotTarget(TemplateMeta tm) {
+        return (tm == null || tm.pool == null) ? 0 : Math.max(0, tm.pool.hot);
+    }
+
+    /**
+     * Registers idle instances left over from the previous run (their ports are reserved by the caller
+     * via {@link #existingPorts()}) and schedules warmup for templates with warmupOnBoot.
+     */
+    void loadExisting() throws IOException {
+        try (DirectoryStream<Path> templatesDs = Files.newDirectoryStream(poolRoot)) {
+            for (Path tDir : templatesDs) {
+                if (!Files.isDirectory(tDir)) continue;
+                String template = tDir.getFileName().toString();
+                try (DirectoryStream<Path> ds = Files.newDirectoryStream(tDir)) {
+                    for (Path p : ds) {
+                        // instance.json is written last, so a dir without it is an interrupted refill
+                        if (Files.exists(p.resolve("instance.json"))) queue(template).addLast(p);
+                        else mgr.deleteDir(p);
+                    }
+                }
+            }
+        }
+
+        for (String template : mgr.listTemplates()) {
+            TemplateMeta tm = templateManager.get(template);
+            if ((isPooled(tm) && tm.pool.warmupOnBoot) || hotTarget(tm) > 0) scheduleRefill(template);
+        }
+
+        worker.scheduleWithFixedDelay(this::sweep, SWEEP_SECONDS, SWEEP_SECONDS, TimeUnit.SECONDS);
+    }
+
+    List<Integer> existingPorts() {
+        List<Integer> ports = new ArrayList<>();
+        for (Deque<Path> q : idle.values()) {
+            for (Path p : q) {
+                try {
+                    ports.add(mgr.readMeta(p).port);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return ports;
+    }
+
+    /**
+     * Moves an idle instance to {@code targetDir} and renames it to {@code instanceName}.
+     * Returns null on a pool miss; the caller then provisions normally.
+     */
+    InstanceMeta claim(String template, String instanceName, Path targetDir) throws IOException {
+        String source = templateManager.resolve(template).source();
+        Path src;
+        while ((src = queue(template).pollFirst()) != null) {
+            if (!source.equals(mgr.readMeta(src).source)) {
+                discard(src);
+                continue;
+            }
+            try {
+                Files.move(src, targetDir, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.out.println("[Host] Pool claim failed for " + src.getFileName() + ": " + e.getMessage());
+                continue;
+            }
+
+            InstanceMeta meta = mgr.readMeta(targetDir);
+            meta.name = instanceName;
+            meta.lastUpdated = System.currentTimeMillis();
+            mgr.writeMeta(targetDir, meta);
+
+            counter(hits, template).increment();
+            scheduleRefill(template);
+            return meta;
+        }
+
+        counter(misses, template).increment();
+        scheduleRefill(template);
+        return null;
+    }
+
+    /** Called at boot for standby instances found in instances/. */
+    void registerHot(String template, String name) {
+        Deque<String> q = hotQueue(template);
+        synchronized (q) {
+            q.addLast(name);
+        }
+    }
+
+    /**
+     * Hands out a RUNNING standby instance of {@code template} and schedules a replacement.
+     * Returns null if none is ready; the caller clears the standby flag.
+     */
+    String claimHot(String template) {
+        Deque<String> q = hotQueue(template);
+        String claimed = null;
+        synchronized (q) {
+            for (Iterator<String> it = q.iterator(); it.hasNext(); ) {
+                String name = it.next();
+                if (mgr.stateOf(name) == ManagedInstance.State.RUNNING) {
+                    it.remove();
+                    claimed = name;
+                    break;
+                }
+            }
+        }
+
+        counter(claimed != null ? hotHits : hotMisses, template).increment();
+        scheduleRefill(template);
+        return claimed;
+    }
+
+    /**
+     * reusePolicy=RESET: instead of deleting, restore data.resetPaths from the template and put the
+     * instance back into the pool. Returns false if the pool is full or the template does not opt in.
+     */
+    boolean recycle(InstanceMeta meta, Path instanceDir) throws IOException {
+        TemplateMeta tm = templateManager.get(meta.template);
+        if (!isPooled(tm) || !"RESET".equalsIgnoreCase(tm.pool.reusePolicy)) return false;
+        if (queue(meta.template).size() >= tm.pool.maxIdle) return false;
+
+        for (String rel : tm.data.resetPaths) {
+            if (rel == null || rel.isBlank()) continue;
+            Path target = instanceDir.resolve(rel).normalize();
+            if (!target.startsWith(instanceDir)) continue;
+            mgr.resetPath(meta.template, rel, target);
+        }
+
+        String id = newId(meta.template);
+        Path dst = poolRoot.resolve(meta.template).resolve(id);
+        Files.createDirectories(dst.getParent());
+        Files.move(instanceDir, dst, StandardCopyOption.ATOMIC_MOVE);
+
+        meta.name = id;
+        meta.autoStart = false;
+        meta.lastState = "STOPPED";
+        meta.lastUpdated = System.currentTimeMillis();
+        mgr.writeMeta(dst, meta);
+
+        queue(meta.template).addLast(dst);
+        System.out.println("[Host] Recycled instance into pool " + meta.template + " as " + id);
+        return true;
+    }
+
+    public PoolResponse stats() throws IOException {
+        List<TemplateStats> out = new ArrayList<>();
+        for (String template : mgr.listTemplates()) {
+            TemplateMeta tm = templateManager.get(template);
+            if (!isPooled(tm) && hotTarget(tm) == 0 && !idle.containsKey(template) && !hot.containsKey(template)) continue;
+            out.add(new TemplateStats(
+                    template,
+                    queue(template).size(),
+                    isPooled(tm) ? tm.pool.minIdle : 0,
+                    isPooled(tm) ? tm.pool.maxIdle : 0,
+                    counter(hits, template).sum(),
+                    counter(misses, template).sum(),
+                    hotQueue(template).size(),
+                    hotTarget(tm),
+                    counter(hotHits, template).sum(),
+                    counter(hotMisses, template).sum()
+            ));
+        }
+        return new PoolResponse(mgr.hostId(), out);
+    }
+
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    // ---- internals ----
+
+    private void scheduleRefill(String template) {
+        if (!refillQueued.add(template)) return;
+        worker.execute(() -> {
+            refillQueued.remove(template);
+            refill(template);
+        });
+    }
+
+    private void sweep() {
+        try {
+            List<String> templates = mgr.listTemplates();
+            for (String template : templates) refill(template);
+            for (String template : new ArrayList<>(idle.keySet())) {
+                if (!templates.contains(template)) trim(template, 0);
+            }
+            reapRetired();
+        } catch (Exception e) {
+            System.out.println("[Host] Pool sweep failed: " + e.getMessage());
+        }
+    }
+
+    private void refill(String template) {
+        if (mgr.draining()) return;
+        refillWarm(template);
+        refillHot(template);
+    }
+
+    private void refillWarm(String template) {
+        try {
+            TemplateMeta tm = templateManager.get(template);
+            if (!isPooled(tm)) {
+                trim(template, 0);
+                return;
+            }
+
+            int min = Math.max(0, tm.pool.minIdle);
+            int max = Math.max(min, tm.pool.maxIdle);
+
+            Deque<Path> q = queue(template);
+            dropStale(template, q);
+            while (q.size() < min) {
+                String id = newId(template);
+                Path dir = poolRoot.resolve(template).resolve(id);
+                Files.createDirectories(dir.getParent());
+                try {
+                    mgr.provision(template, dir, id);
+                } catch (IOException e) {
+                    mgr.deleteDir(dir);
+                    throw e;
+                }
+                q.addLast(dir);
+            }
+
+            trim(template, max);
+        } catch (Exception e) {
+            System.out.println("[Host] Pool refill failed for " + template + ": " + e.getMessage());
+        }
+    }
+
+    private void refillHot(String template) {
+        try {
+            int target = hotTarget(templateManager.get(template));
+            Deque<String> q = hotQueue(template);
+
+            List<String> current;
+            synchronized (q) {
+                current = new ArrayList<>(q);
+            }
+
+            // bring back standbys that were stopped (host restart without autoStart); CRASHED ones are the
+            // RestartSupervisor's, and one stuck in a crash loop gives its slot to a fresh standby
+            String source = current.isEmpty() ? null : templateManager.resolve(template).source();
+            for (String name : current) {
+                InstanceMeta meta = mgr.meta(name);
+                if (meta != null && !source.equals(meta.source)) {
+                    System.out.println("[Host] Hot standby " + name + " is from an older copy of " + template + ", replacing it");
+                    synchronized (q) {
+                        q.remove(name);
+                    }
+                    retire(name);
+                    continue;
+                }
+                ManagedInstance.State st = mgr.stateOf(name);
+                if (st == ManagedInstance.State.CRASH_LOOP) {
+                    System.out.println("[Host] Hot standby " + name + " is crash looping, replacing it");
+                    synchronized (q) {
+                        q.remove(name);
+                    }
+                    retire(name);
+                    continue;
+                }
+                if (st != null && st != ManagedInstance.State.STOPPED) continue;
+                try {
+                    mgr.start(name);
+                } catch (IOException e) {
+                    System.out.println("[Host] Hot standby " + name + " failed to start, replacing: " + e.getMessage());
+                    synchronized (q) {
+                        q.remove(name);
+                    }
+                    retiring.add(name);
+                }
+            }
+
+            while (q.size() < target) {
+                String name = template + "-hot-" + Long.toHexString(ThreadLocalRandom.current().nextLong() & 0xffffffffL);
+                mgr.createStandby(template, name);
+                synchronized (q) {
+                    q.addLast(name);
+                }
+                mgr.start(name);
+            }
+
+            while (true) {
+                String extra;
+                synchronized (q) {
+                    if (q.size() <= target) break;
+                    extra = q.pollLast();
+                }
+                if (extra == null) break;
+                retire(extra);
+            }
+        } catch (Exception e) {
+            System.out.println("[Host] Hot refill failed for " + template + ": " + e.getMessage());
+        }
+    }
+
+    private void retire(String name) {
+        retiring.add(name);
+        try {
+            mgr.stop(name);
+        } catch (IOException e) {
+            System.out.println("[Host] Failed to stop surplus standby " + name + ": " + e.getMessage());
+        }
+    }
+
+    /** Deletes surplus standbys once their process has exited. */
+    private void reapRetired() {
+        for (String name : new ArrayList<>(retiring)) {
+            ManagedInstance.State st = mgr.stateOf(name);
+            if (st == ManagedInstance.State.STARTING || st == ManagedInstance.State.RUNNING) continue;
+            try {
+                mgr.delete(name);
+            } catch (IOException e) {
+                System.out.println("[Host] Failed to delete surplus standby " + name + ": " + e.getMessage());
+            }
+            retiring.remove(name);
+        }
+    }
+
+    private void trim(String template, int max) throws IOException {
+        Deque<Path> q = queue(template);
+        Path p;
+        while (q.size() > max && (p = q.pollLast()) != null) discard(p);
+    }
+
+    /** Idle copies made before the template changed or was rebaked; refilled from the current tree. */
+    private void dropStale(String template, Deque<Path> q) throws IOException {
+        String source = templateManager.resolve(template).source();
+        int dropped = 0;
+        for (Path p : List.copyOf(q)) {
+            if (source.equals(mgr.readMeta(p).source) || !q.removeFirstOccurrence(p)) continue;
+            discard(p);
+            dropped++;
+        }
+        if (dropped > 0) System.out.println("[Host] Dropped " + dropped + " outdated idle instance(s) of " + template);
+    }
+
+    private void discard(Path idleDir) throws IOException {
+        int port = mgr.readMeta(idleDir).port;
+        mgr.discard(idleDir);
+        mgr.releasePort(port);
+    }
+
+    private Deque<Path> queue(String template) {
+        return idle.computeIfAbsent(template, t -> new ConcurrentLinkedDeque<>());
+    }
+
+    private Deque<String> hotQueue(String template) {
+        return hot.computeIfAbsent(template, t -> new ArrayDeque<>());
+    }
+
+    private static LongAdder counter(Map<String, LongAdder> map, String template) {
+        return map.computeIfAbsent(template, t -> new LongAdder());
+    }
+
+    private static String newId(String template) {
+        return template + "-pool-" + Long.toHexString(ThreadLocalRandom.current().nextLong() & 0xffffffffL);
+    }
+}
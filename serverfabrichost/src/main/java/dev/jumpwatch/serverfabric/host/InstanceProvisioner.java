@@ -0,0 +1,187 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Materialises a template directory into a new instance directory.
+ *
+ * Strategies, cheapest first:
+ * - REFLINK: one "cp --reflink=always" of the whole tree (btrfs/xfs/bcachefs). Near constant time.
+ * - BLOB: immutable files are hard linked to deduplicated blobs in the {@link BlobStore}, the rest is copied.
+ * - HARDLINK: files matching the template's immutable globs are hard linked to the template, the rest is copied.
+ * - COPY: plain byte copy of every file.
+ *
+ * In AUTO mode reflink support is probed per (source store, target store) pair and remembered;
+ * without reflinks whole templates go through the blob store and sub-paths are hard linked/copied.
+ */
+public final class InstanceProvisioner {
+
+    public enum Strategy { REFLINK, BLOB, HARDLINK, COPY }
+
+    public static final List<String> DEFAULT_IMMUTABLE = List.of("*.jar", "plugins/*.jar");
+
+    private final String mode; // AUTO | REFLINK | BLOB | HARDLINK | COPY
+    private final BlobStore blobs;
+    private final FileTreeOps ops;
+    private final boolean cpAvailable;
+    private final Map<String, Boolean> reflinkSupport = new ConcurrentHashMap<>();
+    private volatile boolean blobLinksSupported = true;
+
+    public InstanceProvisioner(String mode, BlobStore blobs, FileTreeOps ops) {
+        this.mode = mode == null ? "AUTO" : mode.trim().toUpperCase(Locale.ROOT);
+        this.blobs = blobs;
+        this.ops = ops;
+        this.cpAvailable = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).contains("linux");
+    }
+
+    /** Provisions part of a template (no blob store manifest exists for sub-paths). */
+    public Strategy provision(Path src, Path dst, List<String> immutableGlobs) throws IOException {
+        return provision(null, src, dst, immutableGlobs);
+    }
+
+    /**
+     * Provisions {@code dst} (which must not exist yet) from {@code src}, the whole tree named {@code template}
+     * (a template or one of its baked versions, see {@link TemplateManager.Resolved#tree}; null when src is only
+     * part of one). Returns the strategy that was actually used.
+     */
+    public Strategy provision(String template, Path src, Path dst, List<String> immutableGlobs) throws IOException {
+        return provision(template, src, dst, immutableGlobs, List.of());
+    }
+
+    /**
+     * Same, leaving out the directories {@code skip} (relative to src) that the caller links in from elsewhere.
+     * A reflink clones the whole tree in one go, so it ignores {@code skip}.
+     */
+    public Strategy provision(String template, Path src, Path dst, List<String> immutableGlobs, List<String> skip)
+            throws IOException {
+        if (Files.exists(dst)) throw new IOException("Target already exists: " + dst);
+
+        List<PathMatcher> immutable = compile(immutableGlobs == null ? DEFAULT_IMMUTABLE : immutableGlobs);
+        List<Path> skipped = new ArrayList<>(skip.size());
+        for (String rel : skip) skipped.add(Path.of(rel).normalize());
+
+        switch (mode) {
+            case "COPY" -> {
+                copyTree(src, dst, List.of(), skipped);
+                return Strategy.COPY;
+            }
+            case "HARDLINK" -> {
+                return copyTree(src, dst, immutable, skipped);
+            }
+            case "REFLINK" -> {
+                if (!tryReflink(src, dst)) throw new IOException("Reflink copy failed for " + src + " -> " + dst);
+                return Strategy.REFLINK;
+            }
+            case "BLOB" -> {
+                if (template != null && tryBlob(template, src, dst, immutable, skipped)) return Strategy.BLOB;
+                return copyTree(src, dst, immutable, skipped);
+            }
+            default -> {
+                String key = storeKey(src, dst);
+                if (!Boolean.FALSE.equals(reflinkSupport.get(key))) {
+                    boolean ok = tryReflink(src, dst);
+                    reflinkSupport.put(key, ok);
+                    if (ok) return Strategy.REFLINK;
+                    System.out.println("[Host] Reflink not supported for " + key + ", falling back to blob store/copy");
+                }
+                if (template != null && tryBlob(template, src, dst, immutable, skipped)) return Strategy.BLOB;
+                return copyTree(src, dst, immutable, skipped);
+            }
+        }
+    }
+
+    private boolean tryReflink(Path src, Path dst) throws IOException {
+        if (!cpAvailable) return false;
+
+        Files.createDirectories(dst.getParent());
+        ProcessBuilder pb = new ProcessBuilder(
+                "cp", "-R", "--reflink=always", "--preserve=mode,timestamps",
+                src.toAbsolutePath().toString(), dst.toAbsolutePath().toString()
+        );
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+
+        try {
+            Process p = pb.start();
+            if (!p.waitFor(10, TimeUnit.MINUTES)) {
+                p.destroyForcibly();
+                deleteQuietly(dst);
+                return false;
+            }
+            if (p.exitValue() != 0) {
+                deleteQuietly(dst);
+                return false;
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            deleteQuietly(dst);
+            throw new IOException("Interrupted during reflink copy", e);
+        } catch (IOException e) {
+            // cp missing or not executable
+            deleteQuietly(dst);
+            return false;
+        }
+    }
+
+    private boolean tryBlob(String template, Path src, Path dst, List<PathMatcher> immutable, List<Path> skip)
+            throws IOException {
+        if (blobs == null || !blobLinksSupported) return false;
+
+        BlobStore.Manifest manifest = blobs.ingest(template, src);
+        try {
+            if (blobs.materialize(manifest, dst, immutable, skip)) return true;
+        } catch (IOException e) {
+            deleteQuietly(dst);
+            throw e;
+        }
+
+        System.out.println("[Host] Blob store cannot hard link into " + dst.getParent() + ", falling back to copy");
+        blobLinksSupported = false;
+        deleteQuietly(dst);
+        return false;
+    }
+
+    /** Hard links files matching {@code immutable}, copies the rest. */
+    private Strategy copyTree(Path src, Path dst, List<PathMatcher> immutable, List<Path> skip) throws IOException {
+        try {
+            return ops.copyTree(src, dst, immutable, skip) ? Strategy.HARDLINK : Strategy.COPY;
+        } catch (IOException e) {
+            deleteQuietly(dst);
+            throw e;
+        }
+    }
+
+    private static List<PathMatcher> compile(List<String> globs) {
+        List<PathMatcher> out = new ArrayList<>();
+        FileSystem fs = FileSystems.getDefault();
+        for (String g : globs) {
+            if (g == null || g.isBlank()) continue;
+            out.add(fs.getPathMatcher("glob:" + g.trim()));
+        }
+        return out;
+    }
+
+    private static String storeKey(Path src, Path dst) {
+        try {
+            Path dstParent = dst.toAbsolutePath().getParent();
+            return Files.getFileStore(src).name() + "->" + Files.getFileStore(dstParent).name();
+        } catch (IOException e) {
+            return src.toAbsolutePath().getRoot() + "->" + dst.toAbsolutePath().getRoot();
+        }
+    }
+
+    private void deleteQuietly(Path dir) {
+        try {
+            ops.deleteTree(dir);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package dev.jumpwatch.serverfabric.host;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Authoritative in-memory view of every instance's {@link InstanceMeta}.
+ *
+ * Reads (status, start, stop, ...) never touch disk. Every mutation marks the registry dirty and a
+ * background writer rewrites one compact index file (rootPath/instances.idx) shortly after, via a temp
+ * file + atomic rename. At boot the index is loaded in one read; only instance dirs missing from it
+ * (hand-made or created by an older host) fall back to their instance.json.
+ */
+public final class InstanceRegistry {
+
+    private static final long FLUSH_DELAY_MS = 100;
+
+    private final Path instancesDir;
+    private final Path indexFile;
+    private final ObjectMapper om;
+    private final Map<String, InstanceMeta> metas = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final Object writeLock = new Object();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ServerFabric-Host-index");
+        t.setDaemon(true);
+        return t;
+    });
+
+    InstanceRegistry(Path instancesDir, Path indexFile, ObjectMapper om) {
+        this.instancesDir = instancesDir;
+        this.indexFile = indexFile;
+        this.om = om;
+    }
+
+    /**
+     * Loads the index and reconciles it against the instance directory names (one readdir).
+     * {@code fallback} reads instance.json for directories the index does not know.
+     */
+    void load(MetaReader fallback) throws IOException {
+        Map<String, InstanceMeta> indexed = new HashMap<>();
+        if (Files.exists(indexFile)) {
+            try {
+                List<InstanceMeta> list = om.readValue(indexFile.toFile(), new TypeReference<List<InstanceMeta>>() {});
+                for (InstanceMeta m : list) indexed.put(m.name, m);
+            } catch (IOException e) {
+                System.out.println("[ServerFabric-Host] Instance index unreadable, rebuilding from instance.json: " + e.getMessage());
+            }
+        }
+
+        int fromIndex = 0, scanned = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(instancesDir)) {
+            for (Path p : ds) {
+                if (!Files.isDirectory(p)) continue;
+                String name = p.getFileName().toString();
+
+                InstanceMeta m = indexed.get(name);
+                if (m != null) {
+                    fromIndex++;
+                } else {
+                    try {
+                        m = fallback.read(p);
+                        m.name = name;
+                        scanned++;
+                    } catch (IOException e) {
+                        System.out.println("[ServerFabric-Host] Skipping " + name + ": " + e.getMessage());
+                        continue;
+                    }
+                }
+                metas.put(name, m);
+            }
+        }
+
+        System.out.println("[ServerFabric-Host] Loaded " + metas.size() + " instance(s) ("
+                + fromIndex + " from index, " + scanned + " from instance.json)");
+
+        if (scanned > 0 || indexed.size() != fromIndex) markDirty();
+    }
+
+    public InstanceMeta get(String name) {
+        return metas.get(name);
+    }
+
+    public Collection<InstanceMeta> all() {
+        return metas.values();
+    }
+
+    /** Adds or replaces an entry (the caller has already mutated it) and schedules an index write. */
+    public void put(InstanceMeta meta) {
+        metas.put(meta.name, meta);
+        markDirty();
+    }
+
+    public InstanceMeta remove(String name) {
+        InstanceMeta m = metas.remove(name);
+        if (m != null) markDirty();
+        return m;
+    }
+
+    /** Writes the index now (shutdown, tests). */
+    public void flush() throws IOException {
+        flushScheduled.set(false);
+        writeIndex();
+    }
+
+    public void shutdown() {
+        writer.shutdownNow(); // a pending delayed write is superseded by the flush below
+        try {
+            flush();
+        } catch (IOException e) {
+            System.out.println("[ServerFabric-Host] Final index write failed: " + e.getMessage());
+        }
+    }
+
+    private void markDirty() {
+        if (!flushScheduled.compareAndSet(false, true)) return;
+        try {
+            writer.schedule(() -> {
+                flushScheduled.set(false);
+                try {
+                    writeIndex();
+                } catch (IOException e) {
+                    System.out.println("[ServerFabric-Host] Index write failed: " + e.getMessage());
+                }
+            }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            flushScheduled.set(false); // shutting down; shutdown() flushes
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        synchronized (writeLock) {
+            List<InstanceMeta> snapshot = new ArrayList<>(metas.values());
+            snapshot.sort(Comparator.comparing(m -> m.name));
+
+            Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+            // durable before the rename, and the rename durable before returning: the journal is truncated
+            // after a flush, so a power loss must not take both
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = ByteBuffer.wrap(om.writeValueAsBytes(snapshot));
+                while (buf.hasRemaining()) ch.write(buf);
+                ch.force(true);
+            }
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            fsyncDir(indexFile.toAbsolutePath().getParent());
+        }
+    }
+
+    private static void fsyncDir(Path dir) {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException ignored) {
+            // directories can't be opened for sync on every platform (Windows); the rename is all we get there
+        }
+    }
+
+    @FunctionalInterface
+    interface MetaReader { InstanceMeta read(Path dir) throws IOException; }
+}
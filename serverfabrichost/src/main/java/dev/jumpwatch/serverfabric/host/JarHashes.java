@@ -0,0 +1,44 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SHA-256 of server jars, remembered per file (inode when the filesystem has one, so every hard link of a
+ * blob-store jar is hashed once) until its size or mtime changes.
+ */
+public final class JarHashes {
+
+    private record Entry(long size, long mtime, String sha256) {}
+
+    private final Map<Object, Entry> hashes = new ConcurrentHashMap<>();
+
+    public String sha256(Path jar) throws IOException {
+        BasicFileAttributes a = Files.readAttributes(jar, BasicFileAttributes.class);
+        Object key = a.fileKey() != null ? a.fileKey() : jar.toRealPath();
+        long mtime = a.lastModifiedTime().toMillis();
+        Entry e = hashes.get(key);
+        if (e != null && e.size() == a.size() && e.mtime() == mtime) return e.sha256();
+
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+        byte[] buf = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(jar)) {
+            for (int n; (n = in.read(buf)) > 0; ) md.update(buf, 0, n);
+        }
+        String sha = HexFormat.of().formatHex(md.digest());
+        hashes.put(key, new Entry(a.size(), mtime, sha));
+        return sha;
+    }
+}
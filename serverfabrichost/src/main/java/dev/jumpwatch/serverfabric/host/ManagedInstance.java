@@ -1,12 +1,5 @@
 package dev.jumpwatch.serverfabric.host;
 
-import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
-
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.Socket;
@@ -15,12 +8,15 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 public final class ManagedInstance {
 
-    public enum State { STARTING, RUNNING, CRASHED, STOPPED }
+    // QUEUED: waiting in the StartScheduler, never reported by a ManagedInstance itself
+    public enum State { QUEUED, STARTING, RUNNING, CRASHED, CRASH_LOOP, STOPPED }
 
     public interface StateListener {
         void onState(String instanceName, State newState);
@@ -30,6 +26,11 @@ public final class ManagedInstance {
         void onExit(String instanceName, int exitCode, boolean stopping);
     }
 
+    /** A non-readiness console pattern matched (crash signature, player join/leave, custom event). */
+    public interface OutputListener {
+        void onOutput(String instanceName, OutputPatterns.Action action, String event);
+    }
+
     public enum ReadinessType { LOG_CONTAINS, TCP_PORT, NONE }
 
     private final String javaCmd;
@@ -40,17 +41,25 @@ public final class ManagedInstance {
 
     private final StateListener stateListener;
     private final ExitListener exitListener;
+    private final OutputListener outputListener;
+    private final ProcessSupervisor supervisor;
+    private final ConsoleBuffer console;
 
     private final AtomicReference<State> state = new AtomicReference<>(State.STOPPED);
     private final AtomicBoolean stopping = new AtomicBoolean(false);
 
     private final ReadinessType readinessType;
-    private final String readinessLogContains;
+    private final OutputPatterns outputPatterns;
+    private final ByteMatcher.Cursor cursor;
+    private final ByteMatcher.Hit onMatch = this::onPattern;
     private final String readinessHost;
     private final int readinessPort;
     private final long readinessTimeoutMs;
 
-    private Process process;
+    private volatile Process process;
+    private volatile long startedNanos;
+    private volatile boolean crashSignature;
+    private final AtomicInteger players = new AtomicInteger();
     private BufferedWriter stdin;
 
     public ManagedInstance(
@@ -61,13 +70,16 @@ public final class ManagedInstance {
             Path jar,
             // readiness
             ReadinessType readinessType,
-            String readinessLogContains,
+            OutputPatterns outputPatterns,
             String readinessHost,
             int readinessPort,
             long readinessTimeoutMs,
             // callbacks
             StateListener stateListener,
-            ExitListener exitListener
+            ExitListener exitListener,
+            OutputListener outputListener,
+            ProcessSupervisor supervisor,
+            ConsoleBuffer console
     ) {
         this.javaCmd = javaCmd;
         this.jvmArgs = jvmArgs;
@@ -76,21 +88,27 @@ public final class ManagedInstance {
         this.jar = jar;
 
         this.readinessType = readinessType == null ? ReadinessType.LOG_CONTAINS : readinessType;
-        this.readinessLogContains = (readinessLogContains == null || readinessLogContains.isBlank())
-                ? "Done ("
-                : readinessLogContains;
+        this.outputPatterns = outputPatterns;
+        this.cursor = outputPatterns.cursor();
         this.readinessHost = (readinessHost == null || readinessHost.isBlank()) ? "127.0.0.1" : readinessHost;
         this.readinessPort = readinessPort;
         this.readinessTimeoutMs = readinessTimeoutMs <= 0 ? 20_000 : readinessTimeoutMs;
 
         this.stateListener = stateListener;
         this.exitListener = exitListener;
+        this.outputListener = outputListener;
+        this.supervisor = supervisor;
+        this.console = console;
     }
 
     public void start() throws IOException {
         if (isAlive()) throw new IOException("Process already running");
 
         stopping.set(false);
+        crashSignature = false;
+        players.set(0);
+        cursor.reset();
+        startedNanos = System.nanoTime();
         setState(State.STARTING);
 
         List<String> cmd = new ArrayList<>();
@@ -107,22 +125,83 @@ public final class ManagedInstance {
         process = pb.start();
         stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
 
-        startStdoutPump(process.getInputStream());
-        startExitWatcher();
-        startReadinessWatcher();
+        Process p = process;
+        supervisor.supervise(p, stdoutSink(), () -> onProcessExit(p));
+        startReadinessProbe();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /** OS pid of the server process, -1 before the first start. */
+    public long pid() {
+        Process p = process;
+        return p == null ? -1 : p.pid();
+    }
+
+    /** {@link System#nanoTime()} of the last start(). */
+    public long startedNanos() {
+        return startedNanos;
     }
 
     public boolean isAlive() {
         return process != null && process.isAlive();
     }
 
-    public void stopGraceful() throws IOException {
-        if (!isAlive()) return;
+    /**
+     * Sends "stop"; if the process is still alive {@code graceMs} later it gets SIGTERM (destroy), and
+     * {@code killAfterMs} after that SIGKILL (destroyForcibly, children included). Completes on exit.
+     * The timers are armed first and "stop" is written from its own thread, so a server that stopped reading
+     * stdin can't block the caller (or a drain) past the deadline.
+     */
+    public CompletableFuture<Process> stop(long graceMs, long killAfterMs) {
+        Process p = process;
+        if (p == null || !p.isAlive()) return CompletableFuture.completedFuture(p);
         stopping.set(true);
 
         // Do NOT set STOPPED immediately; wait for real process exit.
         // Otherwise we lose crash classification.
-        sendCommand("stop");
+        AtomicBoolean escalated = new AtomicBoolean();
+        Runnable terminate = () -> {
+            if (!p.isAlive() || !escalated.compareAndSet(false, true)) return;
+            p.destroy();
+            supervisor.after(() -> {
+                if (!p.isAlive()) return;
+                System.out.println("[" + name + "] ignored SIGTERM for " + killAfterMs + " ms, killing");
+                kill(p);
+            }, killAfterMs);
+        };
+
+        supervisor.after(() -> {
+            if (p.isAlive() && !escalated.get()) {
+                System.out.println("[" + name + "] still running " + graceMs + " ms after stop, sending SIGTERM");
+            }
+            terminate.run();
+        }, graceMs);
+
+        // SIGTERM closes the pipe, which also ends a write that is still blocked
+        Thread.ofVirtual().name("ServerFabric-Host-stop-" + name).start(() -> {
+            try {
+                sendCommand("stop");
+            } catch (IOException e) {
+                supervisor.after(terminate, 0); // stdin is gone, the console can't stop it
+            }
+        });
+        return p.onExit();
+    }
+
+    /** SIGKILL now, children included (drain deadline reached). */
+    public void kill() {
+        Process p = process;
+        if (p == null || !p.isAlive()) return;
+        stopping.set(true);
+        kill(p);
+    }
+
+    private static void kill(Process p) {
+        p.descendants().forEach(ProcessHandle::destroyForcibly);
+        p.destroyForcibly();
     }
 
     public void sendCommand(String cmd) throws IOException {
@@ -140,8 +219,18 @@ public final class ManagedInstance {
         }
     }
 
+    public ConsoleBuffer console() {
+        return console;
+    }
+
+    /** Players online, counted from the template's PLAYER_JOIN/PLAYER_LEAVE patterns. */
+    public int players() {
+        return players.get();
+    }
+
     public State getState() {
-        if (!isAlive()) {
+        // process == null: start() is still launching it, the stored STARTING is accurate
+        if (process != null && !process.isAlive()) {
             State s = state.get();
             if (s == State.RUNNING || s == State.STARTING) return State.CRASHED;
         }
@@ -153,101 +242,80 @@ public final class ManagedInstance {
         if (stateListener != null) stateListener.onState(name, s);
     }
 
-    private void startStdoutPump(InputStream in) {
-        Thread t = new Thread(() -> {
-            // Always drain stdout as bytes to avoid pipe deadlocks.
-            byte[] buf = new byte[8192];
-            int n;
-
-            // For log-based readiness, we do a *light* line scan without blocking drain.
-            StringBuilder lineBuf = new StringBuilder(512);
+    private ProcessSupervisor.ChunkSink stdoutSink() {
+        // runs on a shared drain thread: no decoding, no per-chunk allocation. Files and the stdout
+        // mirror are written from the console ring by ConsoleLogWriter.
+        return (buf, off, len) -> {
+            console.write(buf, off, len);
+            if (!outputPatterns.isEmpty()) cursor.feed(buf, off, len, onMatch);
+        };
+    }
 
-            try {
-                while ((n = in.read(buf)) != -1) {
-                    String chunk = new String(buf, 0, n, StandardCharsets.UTF_8);
-                    System.out.print("[" + name + "] " + chunk);
-
-                    if (readinessType == ReadinessType.LOG_CONTAINS && state.get() == State.STARTING) {
-                        // Scan chunk for readiness string, but also handle it across boundaries.
-                        // Accumulate and split on newline when present; never block.
-                        lineBuf.append(chunk);
-
-                        // prevent unbounded growth if no newlines exist
-                        if (lineBuf.length() > 32_000) {
-                            // keep last part
-                            lineBuf.delete(0, lineBuf.length() - 4_000);
-                        }
-
-                        if (lineBuf.indexOf(readinessLogContains) >= 0) {
-                            setState(State.RUNNING);
-                        }
-                    }
+    private void onPattern(int id) {
+        OutputPatterns.Action action = outputPatterns.action(id);
+        switch (action) {
+            case READY -> {
+                if (readinessType == ReadinessType.LOG_CONTAINS && state.get() == State.STARTING) {
+                    setState(State.RUNNING);
                 }
-            } catch (IOException ignored) {
+                return;
             }
-        }, "ServerFabric-Host-stdout-" + name);
-
-        t.setDaemon(true);
-        t.start();
-    }
-
-    private void startExitWatcher() {
-        Thread t = new Thread(() -> {
-            int code = -1;
-            try {
-                code = process.waitFor();
-            } catch (InterruptedException ignored) {
+            case CRASH -> {
+                // the process may linger (watchdog, shutdown hooks); stop routing to it right away
+                crashSignature = true;
+                State s = state.get();
+                if (s == State.STARTING || s == State.RUNNING) setState(State.CRASHED);
+            }
+            case PLAYER_JOIN -> players.incrementAndGet();
+            case PLAYER_LEAVE -> players.updateAndGet(n -> Math.max(0, n - 1));
+            case EVENT -> {
             }
+        }
+        if (outputListener != null) {
+            try { outputListener.onOutput(name, action, outputPatterns.event(id)); } catch (Exception ignored) {}
+        }
+    }
 
-            // Close stdin if still open
-            try { if (stdin != null) stdin.close(); } catch (Exception ignored) {}
+    private void onProcessExit(Process p) {
+        int code = p.exitValue();
 
-            boolean wasStopping = stopping.get();
+        // Close stdin if still open
+        try { if (stdin != null) stdin.close(); } catch (Exception ignored) {}
 
-            // Classify end-state based on intent, not exit code
-            if (wasStopping) {
-                setState(State.STOPPED);
-            } else {
-                setState(State.CRASHED);
-            }
+        boolean wasStopping = stopping.get();
 
-            System.out.println("[" + name + "] exited with code " + code + " stopping=" + wasStopping);
+        // Classify end-state based on intent, not exit code
+        if (wasStopping && !crashSignature) {
+            setState(State.STOPPED);
+        } else {
+            setState(State.CRASHED);
+        }
 
-            if (exitListener != null) {
-                try { exitListener.onExit(name, code, wasStopping); } catch (Exception ignored) {}
-            }
-        }, "ServerFabric-Host-exit-" + name);
+        System.out.println("[" + name + "] exited with code " + code + " stopping=" + wasStopping);
 
-        t.setDaemon(true);
-        t.start();
+        if (exitListener != null) {
+            try { exitListener.onExit(name, code, wasStopping); } catch (Exception ignored) {}
+        }
     }
 
-    private void startReadinessWatcher() {
-        if (readinessType == ReadinessType.NONE) return;
-        if (readinessType == ReadinessType.LOG_CONTAINS) return; // handled by stdout pump
+    private void startReadinessProbe() {
+        if (readinessType != ReadinessType.TCP_PORT) return; // NONE: nothing to do, LOG_CONTAINS: stdout sink
 
         // TCP_PORT readiness: mark RUNNING once the port is reachable
-        if (readinessType == ReadinessType.TCP_PORT) {
-            Thread t = new Thread(() -> {
-                long deadline = System.currentTimeMillis() + readinessTimeoutMs;
-                while (System.currentTimeMillis() < deadline) {
-                    if (!isAlive()) return;
-                    if (state.get() != State.STARTING) return;
-
-                    try (Socket s = new Socket()) {
-                        s.connect(new InetSocketAddress(readinessHost, readinessPort), 750);
-                        setState(State.RUNNING);
-                        return;
-                    } catch (IOException ignored) {
-                    }
-
-                    try { Thread.sleep(250); } catch (InterruptedException ignored) {}
-                }
-                // timeout: leave as STARTING; your manager can decide what to do
-            }, "ServerFabric-Host-ready-" + name);
-
-            t.setDaemon(true);
-            t.start();
-        }
+        long deadline = System.currentTimeMillis() + readinessTimeoutMs;
+        supervisor.probe(() -> {
+            if (!isAlive() || state.get() != State.STARTING) return true;
+            // timeout: leave as STARTING; your manager can decide what to do
+            if (System.currentTimeMillis() >= deadline) return true;
+
+            try (Socket s = new Socket()) {
+                // short timeout: probes of all instances share one thread
+                s.connect(new InetSocketAddress(readinessHost, readinessPort), 200);
+                setState(State.RUNNING);
+                return true;
+            } catch (IOException ignored) {
+                return false;
+            }
+        }, 250);
     }
-}
\ No newline at end of file
+}
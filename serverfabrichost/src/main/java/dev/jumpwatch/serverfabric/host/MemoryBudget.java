@@ -0,0 +1,129 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Admission control for instance JVMs: every start reserves its heap (the larger of -Xmx and -Xms, or the JVM's
+ * default of a quarter of RAM) plus a fixed non-heap overhead, and is refused if that would go over the budget.
+ * Reservations are released when the process exits.
+ */
+public final class MemoryBudget {
+
+    /** Thrown when a start would overcommit the host; the API answers 503 so callers can place elsewhere. */
+    public static final class CapacityException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public CapacityException(String message) {
+            super(message);
+        }
+    }
+
+    private static final long MB = 1024L * 1024L;
+
+    private final long physicalBytes;
+    private final long budgetBytes;
+    private final long overheadBytes;
+
+    private final Map<String, Long> reservations = new HashMap<>();
+    private long reservedBytes = 0;
+
+    /** {@code budgetMb > 0} is used as is, otherwise {@code budgetPercent} of physical RAM. */
+    public MemoryBudget(long budgetMb, int budgetPercent, long overheadMb) {
+        this.physicalBytes = physicalMemory();
+        this.budgetBytes = budgetMb > 0
+                ? budgetMb * MB
+                : physicalBytes / 100 * Math.max(1, Math.min(100, budgetPercent));
+        this.overheadBytes = Math.max(0, overheadMb) * MB;
+    }
+
+    /** Memory an instance launched with {@code jvmArgs} may grow to. */
+    public long footprint(List<String> jvmArgs) {
+        long xmx = -1, xms = -1;
+        for (String a : jvmArgs) {
+            if (a == null) continue;
+            String s = a.trim();
+            if (s.startsWith("-Xmx")) xmx = parseSize(s.substring(4));
+            else if (s.startsWith("-XX:MaxHeapSize=")) xmx = parseSize(s.substring(16));
+            else if (s.startsWith("-Xms")) xms = parseSize(s.substring(4));
+            else if (s.startsWith("-XX:InitialHeapSize=")) xms = parseSize(s.substring(20));
+        }
+        long heap = Math.max(xmx, xms);
+        if (heap <= 0) heap = physicalBytes / 4; // JVM default max heap
+        return heap + overheadBytes;
+    }
+
+    public synchronized void reserve(String name, long bytes) throws CapacityException {
+        Long previous = reservations.remove(name);
+        if (previous != null) reservedBytes -= previous;
+
+        if (reservedBytes + bytes > budgetBytes) {
+            if (previous != null) {
+                reservations.put(name, previous);
+                reservedBytes += previous;
+            }
+            throw new CapacityException("Not enough memory for " + name + ": needs " + bytes / MB + " MB, "
+                    + Math.max(0, budgetBytes - reservedBytes) / MB + " MB of " + budgetBytes / MB + " MB free");
+        }
+        reservations.put(name, bytes);
+        reservedBytes += bytes;
+    }
+
+    /** Refuses footprints that could never fit, even on an empty host. */
+    public void requireFits(String name, long bytes) throws CapacityException {
+        if (bytes > budgetBytes) {
+            throw new CapacityException("Not enough memory for " + name + ": needs " + bytes / MB
+                    + " MB, the budget is " + budgetBytes / MB + " MB");
+        }
+    }
+
+    public synchronized void release(String name) {
+        Long bytes = reservations.remove(name);
+        if (bytes != null) reservedBytes -= bytes;
+    }
+
+    public long budgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized long reservedBytes() {
+        return reservedBytes;
+    }
+
+    public synchronized long freeBytes() {
+        return Math.max(0, budgetBytes - reservedBytes);
+    }
+
+    /** "2G", "1536m", "524288k", "1073741824"; -1 if unparseable. */
+    static long parseSize(String v) {
+        String s = v.trim().toLowerCase(Locale.ROOT);
+        if (s.isEmpty()) return -1;
+        long mul = 1;
+        char unit = s.charAt(s.length() - 1);
+        switch (unit) {
+            case 'k' -> mul = 1024L;
+            case 'm' -> mul = MB;
+            case 'g' -> mul = 1024L * MB;
+            case 't' -> mul = 1024L * 1024L * MB;
+            default -> { }
+        }
+        if (mul != 1) s = s.substring(0, s.length() - 1);
+        try {
+            return Long.parseLong(s) * mul;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long physicalMemory() {
+        // container-aware on current JDKs
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getTotalMemorySize();
+        }
+        return Runtime.getRuntime().maxMemory() * 4;
+    }
+}
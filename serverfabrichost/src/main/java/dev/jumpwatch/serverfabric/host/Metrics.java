@@ -0,0 +1,90 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Host-side histograms for GET /metrics (Prometheus text format). Recording is a few LongAdder increments;
+ * gauges (states, ports, processes) are read at scrape time by {@link InstanceManager#writeMetrics}.
+ */
+public final class Metrics {
+
+    // seconds; HTTP requests sit at the low end, creates and starts at the high end
+    private static final double[] BUCKETS = {
+            0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120
+    };
+
+    public static final class Histogram {
+        private final long[] boundsNanos = new long[BUCKETS.length];
+        private final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1]; // last one: +Inf
+        private final LongAdder sumNanos = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS.length; i++) boundsNanos[i] = (long) (BUCKETS[i] * 1e9);
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        public void observeNanos(long nanos) {
+            int i = 0;
+            while (i < boundsNanos.length && nanos > boundsNanos[i]) i++;
+            buckets[i].increment();
+            sumNanos.add(nanos);
+        }
+
+        void write(StringBuilder sb, String name, String labels) {
+            String sep = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += buckets[i].sum();
+                sb.append(name).append("_bucket{").append(sep).append("le=\"").append(BUCKETS[i]).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            cumulative += buckets[BUCKETS.length].sum();
+            sb.append(name).append("_bucket{").append(sep).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+            String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+            sb.append(name).append("_sum").append(braces).append(' ').append(sumNanos.sum() / 1e9).append('\n');
+            sb.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+        }
+    }
+
+    private final Map<String, Histogram> http = new ConcurrentHashMap<>();
+    public final Histogram createDuration = new Histogram();
+    private final Map<String, Histogram> startDuration = new ConcurrentHashMap<>();
+    public final Histogram startQueueWait = new Histogram();
+
+    public void observeHttp(String handler, long nanos) {
+        http.computeIfAbsent(handler, h -> new Histogram()).observeNanos(nanos);
+    }
+
+    /** Start-to-RUNNING time by AppCDS mode (off, training, archive), for comparing boots with and without. */
+    public Histogram startDuration(CdsArchives.Mode cds) {
+        return startDuration.computeIfAbsent(cds.name().toLowerCase(Locale.ROOT), c -> new Histogram());
+    }
+
+    void writeHistograms(StringBuilder sb) {
+        header(sb, "serverfabric_http_request_duration_seconds", "histogram", "HTTP API latency by handler");
+        for (var e : new TreeMap<>(http).entrySet()) {
+            e.getValue().write(sb, "serverfabric_http_request_duration_seconds", "handler=\"" + label(e.getKey()) + "\"");
+        }
+        header(sb, "serverfabric_instance_create_duration_seconds", "histogram", "Time to create an instance from a template");
+        createDuration.write(sb, "serverfabric_instance_create_duration_seconds", "");
+        header(sb, "serverfabric_instance_start_duration_seconds", "histogram", "Time from start until the instance is RUNNING");
+        for (var e : new TreeMap<>(startDuration).entrySet()) {
+            e.getValue().write(sb, "serverfabric_instance_start_duration_seconds", "cds=\"" + e.getKey() + "\"");
+        }
+        header(sb, "serverfabric_start_queue_wait_seconds", "histogram", "Time a start waited in the start queue");
+        startQueueWait.write(sb, "serverfabric_start_queue_wait_seconds", "");
+    }
+
+    static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    static String label(String v) {
+        return v.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,76 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A template's console patterns (readiness line, crash signatures, player join/leave, custom events),
+ * compiled once into a {@link ByteMatcher} and shared by every instance of the template.
+ */
+public final class OutputPatterns {
+
+    public enum Action { READY, CRASH, PLAYER_JOIN, PLAYER_LEAVE, EVENT }
+
+    private final ByteMatcher matcher;
+    private final Action[] actions;
+    private final String[] events;
+
+    private OutputPatterns(List<byte[]> patterns, List<Action> actions, List<String> events) {
+        this.matcher = ByteMatcher.compile(patterns);
+        this.actions = actions.toArray(new Action[0]);
+        this.events = events.toArray(new String[0]);
+    }
+
+    /**
+     * Builds the rules for a template: its {@code patterns}, plus the readiness string as READY when
+     * readiness is LOG_CONTAINS. {@code on} values other than the known actions are published as that
+     * event type.
+     */
+    public static OutputPatterns of(TemplateMeta tm, boolean logReadiness, String readinessContains) {
+        List<byte[]> patterns = new ArrayList<>();
+        List<Action> actions = new ArrayList<>();
+        List<String> events = new ArrayList<>();
+
+        if (logReadiness) {
+            patterns.add(readinessContains.getBytes(StandardCharsets.UTF_8));
+            actions.add(Action.READY);
+            events.add("READY");
+        }
+        if (tm != null && tm.patterns != null) {
+            for (TemplateMeta.Pattern p : tm.patterns) {
+                if (p == null || p.match == null || p.match.isEmpty() || p.on == null || p.on.isBlank()) continue;
+                String on = p.on.trim().toUpperCase(Locale.ROOT);
+                Action a = switch (on) {
+                    case "READY" -> Action.READY;
+                    case "CRASH" -> Action.CRASH;
+                    case "PLAYER_JOIN" -> Action.PLAYER_JOIN;
+                    case "PLAYER_LEAVE" -> Action.PLAYER_LEAVE;
+                    default -> Action.EVENT;
+                };
+                patterns.add(p.match.getBytes(StandardCharsets.UTF_8));
+                actions.add(a);
+                events.add(on);
+            }
+        }
+        return new OutputPatterns(patterns, actions, events);
+    }
+
+    public boolean isEmpty() {
+        return actions.length == 0;
+    }
+
+    public ByteMatcher.Cursor cursor() {
+        return matcher.cursor();
+    }
+
+    public Action action(int patternId) {
+        return actions[patternId];
+    }
+
+    /** Event type published for a match (the template's {@code on} value, upper-cased). */
+    public String event(int patternId) {
+        return events[patternId];
+    }
+}
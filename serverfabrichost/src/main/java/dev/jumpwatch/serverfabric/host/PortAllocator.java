@@ -0,0 +1,186 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free port allocator over [portMin, portMax] backed by a bitmap (one bit per port, set = taken).
+ *
+ * Allocation starts at a rotating cursor and claims the first clear bit with a CAS, so parallel creates
+ * spread over the range instead of fighting over the lowest port. Only the chosen port gets a bind probe;
+ * if something outside the host holds it, it is parked in quarantine and the next one is tried.
+ *
+ * Released ports stay taken for {@code quarantineMs} (config: portQuarantineMs) so a new instance never
+ * lands on a port whose old sockets are still in TIME_WAIT or cached by the proxy.
+ */
+public final class PortAllocator {
+
+    private record Parked(int port, long until) {}
+
+    private final int portMin, portMax, size;
+    private final long quarantineMs;
+    private final AtomicLongArray bits;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final AtomicInteger used = new AtomicInteger();
+    // constant cooldown => FIFO order is deadline order
+    private final ConcurrentLinkedQueue<Parked> quarantine = new ConcurrentLinkedQueue<>();
+
+    public PortAllocator(int portMin, int portMax, long quarantineMs) {
+        if (portMax < portMin) throw new IllegalArgumentException("portMax < portMin");
+        this.portMin = portMin;
+        this.portMax = portMax;
+        this.size = portMax - portMin + 1;
+        this.quarantineMs = Math.max(0, quarantineMs);
+        this.bits = new AtomicLongArray((size + 63) >>> 6);
+    }
+
+    /** Marks a port as taken (boot rebuild from the registry/pool). Out-of-range ports are ignored. */
+    public void reserve(int port) {
+        if (port < portMin || port > portMax) return;
+        trySet(port - portMin);
+    }
+
+    public int allocate() throws IOException {
+        reclaimExpired();
+        return claimBindable();
+    }
+
+    /**
+     * {@code n} ports for a bulk create, all or none: one quarantine sweep and a capacity check up front, then
+     * the claims. If the range runs dry halfway, the ports claimed so far go straight back (never handed out).
+     */
+    public int[] allocate(int n) throws IOException {
+        reclaimExpired();
+        int free = size - used.get();
+        if (n > free) {
+            throw new IOException("Not enough free ports for " + n + " instances in range " + portMin + "-" + portMax
+                    + " (" + free + " free, " + quarantine.size() + " in quarantine)");
+        }
+
+        int[] out = new int[n];
+        int got = 0;
+        try {
+            for (; got < n; got++) out[got] = claimBindable();
+        } catch (IOException e) {
+            for (int i = 0; i < got; i++) clear(out[i] - portMin);
+            throw e;
+        }
+        return out;
+    }
+
+    private int claimBindable() throws IOException {
+        // each pass claims a different free bit, so this bounds the number of bind probes
+        for (int attempt = 0; attempt < size; attempt++) {
+            int idx = claimNext();
+            if (idx < 0) break;
+
+            int port = portMin + idx;
+            if (isBindable(port)) return port;
+            park(idx); // foreign process on this port; look again after the cooldown
+        }
+        throw new IOException("No free ports in range " + portMin + "-" + portMax
+                + " (" + quarantine.size() + " in quarantine)");
+    }
+
+    /** Returns a port to the pool after the quarantine period. */
+    public void release(int port) {
+        if (port < portMin || port > portMax) return;
+        park(port - portMin);
+    }
+
+    public int inUse() {
+        return used.get();
+    }
+
+    public int quarantined() {
+        return quarantine.size();
+    }
+
+    public int capacity() {
+        return size;
+    }
+
+    private int claimNext() {
+        int start = Math.floorMod(cursor.getAndIncrement(), size);
+        int words = bits.length();
+        int w = start >>> 6;
+        long mask = -1L << (start & 63); // first word: only bits at/after the cursor
+
+        for (int i = 0; i <= words; i++) {
+            while (true) {
+                long cur = bits.get(w);
+                long free = ~cur & mask & validMask(w);
+                if (free == 0) break;
+
+                long bit = Long.lowestOneBit(free);
+                if (bits.compareAndSet(w, cur, cur | bit)) {
+                    used.incrementAndGet();
+                    return (w << 6) + Long.numberOfTrailingZeros(bit);
+                }
+            }
+            w = (w + 1) % words;
+            mask = -1L;
+        }
+        return -1;
+    }
+
+    private void park(int idx) {
+        if (quarantineMs == 0) {
+            clear(idx);
+            return;
+        }
+        quarantine.add(new Parked(idx, System.currentTimeMillis() + quarantineMs));
+    }
+
+    private void reclaimExpired() {
+        long now = System.currentTimeMillis();
+        Parked p;
+        while ((p = quarantine.peek()) != null && p.until() <= now) {
+            if (quarantine.remove(p)) clear(p.port());
+        }
+    }
+
+    private boolean trySet(int idx) {
+        int w = idx >>> 6;
+        long bit = 1L << (idx & 63);
+        while (true) {
+            long cur = bits.get(w);
+            if ((cur & bit) != 0) return false;
+            if (bits.compareAndSet(w, cur, cur | bit)) {
+                used.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    private void clear(int idx) {
+        int w = idx >>> 6;
+        long bit = 1L << (idx & 63);
+        while (true) {
+            long cur = bits.get(w);
+            if ((cur & bit) == 0) return;
+            if (bits.compareAndSet(w, cur, cur & ~bit)) {
+                used.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /** Bits beyond portMax in the last word are never handed out. */
+    private long validMask(int w) {
+        int remaining = size - (w << 6);
+        return remaining >= 64 ? -1L : (1L << remaining) - 1;
+    }
+
+    private static boolean isBindable(int port) {
+        try (ServerSocket socket = new ServerSocket(port)) {
+            socket.setReuseAddress(true);
+            return true;
+        } catch (IOException ignored) {
+            return false;
+        }
+    }
+}
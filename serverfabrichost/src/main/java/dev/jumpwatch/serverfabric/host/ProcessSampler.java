@@ -0,0 +1,168 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Samples CPU time, RSS, thread count and disk I/O of every running instance from /proc/<pid>/{stat,status,io}.
+ *
+ * One pass over all instances per period on the supervisor's scheduler thread. The files are read into one
+ * reused buffer and parsed in place; results land in a preallocated slot per instance, so a pass allocates
+ * little more than the file handles. Does nothing where /proc is missing.
+ */
+public final class ProcessSampler {
+
+    private static final long CLOCK_TICKS = 100; // USER_HZ, fixed at 100 on Linux
+    private static final byte[] VM_RSS = "VmRSS:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] READ_BYTES = "read_bytes:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WRITE_BYTES = "write_bytes:".getBytes(StandardCharsets.US_ASCII);
+
+    private static final class Slot {
+        final Path stat;
+        final Path status;
+        final Path io;
+        volatile long cpuTicks, rssKb, threads, readBytes, writeBytes;
+        volatile boolean sampled;
+
+        Slot(long pid) {
+            Path dir = Path.of("/proc", Long.toString(pid));
+            this.stat = dir.resolve("stat");
+            this.status = dir.resolve("status");
+            this.io = dir.resolve("io");
+        }
+    }
+
+    private final boolean available = Files.isDirectory(Path.of("/proc/self"));
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+    private final ByteBuffer buf = ByteBuffer.allocate(8192); // sampler thread only
+    private volatile long lastPassNanos;
+
+    public boolean available() {
+        return available;
+    }
+
+    public void track(String name, long pid) {
+        if (available && pid > 0) slots.put(name, new Slot(pid));
+    }
+
+    public void untrack(String name) {
+        slots.remove(name);
+    }
+
+    public void sampleAll() {
+        long t0 = System.nanoTime();
+        for (Slot s : slots.values()) {
+            try {
+                sample(s);
+                s.sampled = true;
+            } catch (IOException | RuntimeException ignored) {
+                // exited between exit callback and untrack, or /proc/<pid>/io not readable
+            }
+        }
+        lastPassNanos = System.nanoTime() - t0;
+    }
+
+    private void sample(Slot s) throws IOException {
+        // stat: "pid (comm) state ppid ..." - comm may contain spaces, fields are counted after the last ')'
+        int n = read(s.stat);
+        byte[] b = buf.array();
+        int p = n - 1;
+        while (p >= 0 && b[p] != ')') p--;
+        if (p < 0) return;
+        int field = 2;
+        long utime = 0, stime = 0, threads = 0;
+        int i = p + 1;
+        while (i < n && field < 20) {
+            while (i < n && b[i] == ' ') i++;
+            field++;
+            if (field == 14) utime = parseLong(b, i, n);
+            else if (field == 15) stime = parseLong(b, i, n);
+            else if (field == 20) threads = parseLong(b, i, n);
+            while (i < n && b[i] != ' ') i++;
+        }
+        s.cpuTicks = utime + stime;
+        s.threads = threads;
+
+        n = read(s.status);
+        long rss = valueAfter(b, n, VM_RSS);
+        if (rss >= 0) s.rssKb = rss;
+
+        n = read(s.io);
+        long r = valueAfter(b, n, READ_BYTES);
+        long w = valueAfter(b, n, WRITE_BYTES);
+        if (r >= 0) s.readBytes = r;
+        if (w >= 0) s.writeBytes = w;
+    }
+
+    private int read(Path file) throws IOException {
+        buf.clear();
+        try (FileChannel ch = FileChannel.open(file)) {
+            while (buf.hasRemaining() && ch.read(buf) > 0) { }
+        }
+        return buf.position();
+    }
+
+    /** Number after {@code key} at the start of a line, or -1. */
+    private static long valueAfter(byte[] b, int n, byte[] key) {
+        outer:
+        for (int i = 0; i + key.length <= n; i++) {
+            if (i > 0 && b[i - 1] != '\n') continue;
+            for (int k = 0; k < key.length; k++) {
+                if (b[i + k] != key[k]) continue outer;
+            }
+            int j = i + key.length;
+            while (j < n && (b[j] == ' ' || b[j] == '\t')) j++;
+            return parseLong(b, j, n);
+        }
+        return -1;
+    }
+
+    private static long parseLong(byte[] b, int i, int n) {
+        long v = 0;
+        while (i < n && b[i] >= '0' && b[i] <= '9') v = v * 10 + (b[i++] - '0');
+        return v;
+    }
+
+    void write(StringBuilder sb) {
+        Map<String, Slot> sorted = new TreeMap<>(slots);
+
+        Metrics.header(sb, "serverfabric_instance_cpu_seconds_total", "counter", "CPU time (user+system) of the instance process");
+        for (var e : sorted.entrySet()) {
+            if (e.getValue().sampled) sample(sb, "serverfabric_instance_cpu_seconds_total", e.getKey(), e.getValue().cpuTicks / (double) CLOCK_TICKS);
+        }
+        Metrics.header(sb, "serverfabric_instance_resident_memory_bytes", "gauge", "Resident set size of the instance process");
+        for (var e : sorted.entrySet()) {
+            if (e.getValue().sampled) sample(sb, "serverfabric_instance_resident_memory_bytes", e.getKey(), e.getValue().rssKb * 1024);
+        }
+        Metrics.header(sb, "serverfabric_instance_threads", "gauge", "Threads of the instance process");
+        for (var e : sorted.entrySet()) {
+            if (e.getValue().sampled) sample(sb, "serverfabric_instance_threads", e.getKey(), e.getValue().threads);
+        }
+        Metrics.header(sb, "serverfabric_instance_io_read_bytes_total", "counter", "Bytes the instance process read from storage");
+        for (var e : sorted.entrySet()) {
+            if (e.getValue().sampled) sample(sb, "serverfabric_instance_io_read_bytes_total", e.getKey(), e.getValue().readBytes);
+        }
+        Metrics.header(sb, "serverfabric_instance_io_write_bytes_total", "counter", "Bytes the instance process wrote to storage");
+        for (var e : sorted.entrySet()) {
+            if (e.getValue().sampled) sample(sb, "serverfabric_instance_io_write_bytes_total", e.getKey(), e.getValue().writeBytes);
+        }
+
+        Metrics.header(sb, "serverfabric_process_sample_duration_seconds", "gauge", "Duration of the last /proc sampling pass");
+        sb.append("serverfabric_process_sample_duration_seconds ").append(lastPassNanos / 1e9).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String metric, String name, double v) {
+        sb.append(metric).append("{name=\"").append(Metrics.label(name)).append("\"} ").append(v).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String metric, String name, long v) {
+        sb.append(metric).append("{name=\"").append(Metrics.label(name)).append("\"} ").append(v).append('\n');
+    }
+}
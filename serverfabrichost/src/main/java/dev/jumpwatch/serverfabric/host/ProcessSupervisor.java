@@ -0,0 +1,190 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared supervision for every {@link ManagedInstance}, so the host's thread count does not grow with
+ * the number of instances:
+ *
+ * - stdout: a few drain threads poll all pipes with available() and read whatever is there. Blocking
+ *   pipe reads would pin a thread (virtual or not) per instance.
+ * - exit: Process.onExit() completes on the JDK's own reaper; the callback runs after the final drain.
+ * - readiness probes and other periodic host work (process sampling): one shared scheduler thread.
+ */
+public final class ProcessSupervisor {
+
+    @FunctionalInterface
+    public interface ChunkSink { void onChunk(byte[] buf, int off, int len); }
+
+    /** A readiness probe; return true once done (ready, gave up, or no longer relevant). */
+    @FunctionalInterface
+    public interface Probe { boolean poll(); }
+
+    private static final int READ_CHUNK = 64 * 1024;
+    private static final long MIN_IDLE_MS = 5;
+    private static final long MAX_IDLE_MS = 50;
+
+    private final DrainLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ServerFabric-Host-supervisor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ProcessSupervisor(int drainThreads) {
+        loops = new DrainLoop[Math.max(1, drainThreads)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new DrainLoop();
+            Thread t = new Thread(loops[i], "ServerFabric-Host-drain-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Drains {@code process}'s stdout into {@code sink} until the process exits, then runs {@code onExit}
+     * once the remaining output has been delivered.
+     */
+    public void supervise(Process process, ChunkSink sink, Runnable onExit) {
+        Drain d = new Drain(process, sink, onExit);
+        loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)].add(d);
+        process.onExit().whenComplete((p, err) -> d.closing = true);
+    }
+
+    /** Runs {@code probe} every {@code periodMs} until it returns true. */
+    public void probe(Probe probe, long periodMs) {
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                boolean done;
+                try {
+                    done = probe.poll();
+                } catch (Exception e) {
+                    done = true;
+                }
+                if (!done) scheduler.schedule(this, periodMs, TimeUnit.MILLISECONDS);
+            }
+        }, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /** Runs {@code task} once after {@code delayMs} on the shared scheduler (stop escalation). */
+    public void after(Runnable task, long delayMs) {
+        scheduler.schedule(task, Math.max(0, delayMs), TimeUnit.MILLISECONDS);
+    }
+
+    /** Runs {@code task} every {@code periodMs} on the shared scheduler; exceptions don't cancel it. */
+    public void every(Runnable task, long periodMs) {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                System.out.println("[ServerFabric-Host] Periodic task failed: " + e.getMessage());
+            }
+        }, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Number of pipes currently being drained (for diagnostics). */
+    public int supervised() {
+        int n = 0;
+        for (DrainLoop l : loops) n += l.drains.size();
+        return n;
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void finish(Drain d) {
+        try {
+            d.in.close();
+        } catch (IOException ignored) {
+        }
+        // listeners may do real work (journal, events); keep them off the drain threads. destroy() closes the
+        // pipe while a process that ignores SIGTERM is still alive, so wait for the real exit.
+        d.process.onExit().whenComplete((p, err) -> scheduler.execute(d.onExit));
+    }
+
+    private static final class Drain {
+        final Process process;
+        final InputStream in;
+        final ChunkSink sink;
+        final Runnable onExit;
+        volatile boolean closing;
+
+        Drain(Process process, ChunkSink sink, Runnable onExit) {
+            this.process = process;
+            this.in = process.getInputStream();
+            this.sink = sink;
+            this.onExit = onExit;
+        }
+    }
+
+    private final class DrainLoop implements Runnable {
+        final List<Drain> drains = new CopyOnWriteArrayList<>();
+
+        void add(Drain d) {
+            drains.add(d);
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+
+        @Override
+        public void run() {
+            byte[] buf = new byte[READ_CHUNK];
+            long idle = MIN_IDLE_MS;
+
+            while (true) {
+                boolean any = false;
+                for (Drain d : drains) {
+                    // sample before reading so output written just before exit is never lost
+                    boolean exited = d.closing;
+                    int read = pump(d, buf);
+                    if (read > 0) {
+                        any = true;
+                    } else if (read < 0 || exited) {
+                        drains.remove(d);
+                        finish(d);
+                    }
+                }
+
+                if (any) {
+                    idle = MIN_IDLE_MS;
+                    continue;
+                }
+
+                try {
+                    synchronized (this) {
+                        wait(idle);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                idle = Math.min(MAX_IDLE_MS, idle * 2);
+            }
+        }
+
+        /** Bytes delivered, 0 if nothing is buffered, -1 if the pipe is gone. */
+        private int pump(Drain d, byte[] buf) {
+            try {
+                int avail = d.in.available();
+                if (avail <= 0) return 0;
+                int n = d.in.read(buf, 0, Math.min(avail, buf.length));
+                if (n <= 0) return n < 0 ? -1 : 0;
+                try {
+                    d.sink.onChunk(buf, 0, n);
+                } catch (Exception e) {
+                    System.out.println("[ServerFabric-Host] Output handler failed: " + e.getMessage());
+                }
+                return n;
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+    }
+}
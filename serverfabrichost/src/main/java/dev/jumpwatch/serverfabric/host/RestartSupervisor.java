@@ -0,0 +1,154 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Brings CRASHED instances back without waiting for a host restart (template.json "restart").
+ *
+ * The n-th restart within {@code windowSeconds} waits {@code backoffSeconds * 2^(n-1)} (capped at
+ * {@code maxBackoffSeconds}) and then goes through the normal start queue. A crash after {@code maxRestarts}
+ * restarts in the window is a crash loop: the instance is left down until someone starts or stops it, and the
+ * last console lines of the crash are kept for GET /server/crash.
+ */
+public final class RestartSupervisor {
+
+    public interface Restarter {
+        void restart(String name) throws IOException;
+    }
+
+    /** What GET /server/crash shows; {@code restartInMs} is -1 when no restart is pending. */
+    public record CrashReport(String name, boolean crashLoop, int restarts, int restartsInWindow, int lastExitCode,
+                              long lastCrashAt, long restartInMs, List<String> lastLines) {}
+
+    private static final class Track {
+        final ArrayDeque<Long> window = new ArrayDeque<>(); // restart times (ms) within the policy window
+        int restarts;
+        boolean crashLoop;
+        int lastExitCode;
+        long lastCrashAt;
+        long restartAt = -1;
+        long generation; // bumped on clear so a pending restart that lost the race is dropped
+        List<String> lastLines = List.of();
+    }
+
+    private final ProcessSupervisor supervisor;
+    private final Restarter restarter;
+    private final Map<String, Track> tracks = new HashMap<>();
+    private long totalRestarts = 0;
+
+    public RestartSupervisor(ProcessSupervisor supervisor, Restarter restarter) {
+        this.supervisor = supervisor;
+        this.restarter = restarter;
+    }
+
+    /** The instance exited CRASHED; returns true if it entered the crash loop state. */
+    public boolean crashed(String name, int exitCode, TemplateMeta.Restart policy, ConsoleBuffer console) {
+        TemplateMeta.Restart p = policy == null ? new TemplateMeta.Restart() : policy;
+        List<String> lines = console == null ? List.of() : lastLines(console, p.logLines);
+        long now = System.currentTimeMillis();
+
+        long delay;
+        long generation;
+        synchronized (this) {
+            Track t = tracks.computeIfAbsent(name, n -> new Track());
+            t.lastExitCode = exitCode;
+            t.lastCrashAt = now;
+            t.lastLines = lines;
+            if (!p.enabled) return false;
+
+            long windowStart = now - Math.max(1, p.windowSeconds) * 1000L;
+            while (!t.window.isEmpty() && t.window.peekFirst() < windowStart) t.window.pollFirst();
+            if (t.window.size() >= p.maxRestarts) {
+                t.crashLoop = true;
+                t.restartAt = -1;
+                System.out.println("[ServerFabric-Host] " + name + " crashed " + (t.window.size() + 1) + " times within "
+                        + p.windowSeconds + " s, not restarting it again (crash loop)");
+                return true;
+            }
+
+            int shift = Math.min(20, t.window.size());
+            delay = Math.min(Math.max(0, p.maxBackoffSeconds) * 1000L, Math.max(0, p.backoffSeconds) * 1000L << shift);
+            t.window.addLast(now);
+            t.restarts++;
+            totalRestarts++;
+            t.restartAt = now + delay;
+            generation = t.generation;
+        }
+
+        System.out.println("[ServerFabric-Host] " + name + " crashed (exit " + exitCode + "), restarting in " + delay + " ms");
+        supervisor.after(() -> fire(name, generation), delay);
+        return false;
+    }
+
+    private void fire(String name, long generation) {
+        synchronized (this) {
+            Track t = tracks.get(name);
+            if (t == null || t.generation != generation || t.restartAt < 0) return;
+            t.restartAt = -1;
+        }
+        try {
+            restarter.restart(name);
+        } catch (Exception e) {
+            System.out.println("[ServerFabric-Host] Restart of " + name + " failed: " + e.getMessage());
+        }
+    }
+
+    /** Someone started/stopped/deleted it by hand: drop a pending restart and the crash loop. True if either existed. */
+    public synchronized boolean clear(String name) {
+        Track t = tracks.get(name);
+        if (t == null) return false;
+        boolean had = t.restartAt >= 0 || t.crashLoop;
+        t.generation++;
+        t.restartAt = -1;
+        t.crashLoop = false;
+        t.window.clear();
+        return had;
+    }
+
+    public synchronized void forget(String name) {
+        Track t = tracks.remove(name);
+        if (t != null) t.generation++;
+    }
+
+    /** Crash loop carried over from before a host restart (journal), without its console lines. */
+    public synchronized void markCrashLoop(String name) {
+        tracks.computeIfAbsent(name, n -> new Track()).crashLoop = true;
+    }
+
+    public synchronized boolean crashLooping(String name) {
+        Track t = tracks.get(name);
+        return t != null && t.crashLoop;
+    }
+
+    public synchronized boolean restartPending(String name) {
+        Track t = tracks.get(name);
+        return t != null && t.restartAt >= 0;
+    }
+
+    public synchronized int restarts(String name) {
+        Track t = tracks.get(name);
+        return t == null ? 0 : t.restarts;
+    }
+
+    public synchronized long totalRestarts() {
+        return totalRestarts;
+    }
+
+    public synchronized CrashReport report(String name) {
+        Track t = tracks.get(name);
+        if (t == null) return new CrashReport(name, false, 0, 0, 0, 0, -1, List.of());
+        long in = t.restartAt < 0 ? -1 : Math.max(0, t.restartAt - System.currentTimeMillis());
+        return new CrashReport(name, t.crashLoop, t.restarts, t.window.size(), t.lastExitCode, t.lastCrashAt, in,
+                t.lastLines);
+    }
+
+    private static List<String> lastLines(ConsoleBuffer console, int n) {
+        if (n <= 0) return List.of();
+        String text = new String(console.tail(console.capacity()).data(), StandardCharsets.UTF_8);
+        String[] all = text.split("\r?\n");
+        int from = Math.max(0, all.length - n);
+        return List.of(Arrays.copyOfRange(all, from, all.length));
+    }
+}
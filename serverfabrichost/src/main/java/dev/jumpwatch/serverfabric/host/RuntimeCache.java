@@ -0,0 +1,161 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a server jar generates on its first start (Paper: cache/, libraries/, versions/), kept once per template and
+ * jar hash under rootPath/runtime/&lt;template&gt;/&lt;sha256&gt;/ and shared read-only by the template's instances
+ * that run that jar (template.json "runtime"). Keyed by template too, because a template may ship its own
+ * libraries/ or cache/ next to a jar another template also uses.
+ *
+ * The first instance of a jar to reach RUNNING has done that work; its trees are copied into the runtime
+ * directory. Instances created after that get symlinks instead of their own copies, so the server finds its
+ * patched jar and libraries in place and N instances keep one copy on disk.
+ */
+public final class RuntimeCache {
+
+    private static final String COMPLETE = ".complete";
+
+    private final Path dir;
+    private final FileTreeOps ops;
+    private final JarHashes jarHashes;
+    private final Set<String> promoting = ConcurrentHashMap.newKeySet();
+    private final LongAdder links = new LongAdder();
+
+    public RuntimeCache(Path dir, FileTreeOps ops, JarHashes jarHashes) throws IOException {
+        this.dir = dir;
+        this.ops = ops;
+        this.jarHashes = jarHashes;
+        Files.createDirectories(dir);
+    }
+
+    /** Those of {@code dirs} the shared copy of {@code jar} has, so provisioning can leave them out; empty without one. */
+    public List<String> linkable(String template, Path jar, List<String> dirs) throws IOException {
+        Path shared = sharedDir(template, jar);
+        if (!Files.exists(shared.resolve(COMPLETE))) return List.of();
+
+        List<String> out = new ArrayList<>();
+        for (String rel : dirs) if (Files.isDirectory(shared.resolve(rel))) out.add(rel);
+        return out;
+    }
+
+    /**
+     * Links {@code dirs} of a freshly provisioned instance to the shared copy; returns how many. A copy that still
+     * came with the template (reflink clones, or a cache completed since the copy started) is replaced.
+     */
+    public int link(String template, Path jar, Path instanceDir, List<String> dirs) throws IOException {
+        Path shared = sharedDir(template, jar);
+        if (!Files.exists(shared.resolve(COMPLETE))) return 0;
+
+        int n = 0;
+        for (String rel : dirs) {
+            Path src = shared.resolve(rel);
+            Path target = instanceDir.resolve(rel).normalize();
+            if (!Files.isDirectory(src) || !target.startsWith(instanceDir) || target.equals(instanceDir)) continue;
+            if (Files.isSymbolicLink(target)) continue;
+            ops.deleteTree(target);
+            Files.createDirectories(target.getParent());
+            Files.createSymbolicLink(target, src.toAbsolutePath());
+            n++;
+        }
+        links.add(n);
+        return n;
+    }
+
+    /** An instance of {@code jar} is RUNNING; if the jar has no shared copy yet, one is made from its trees. */
+    public void promote(String template, Path jar, Path instanceDir, List<String> dirs) throws IOException {
+        String hash = jarHashes.sha256(jar);
+        Path shared = dir.resolve(template).resolve(hash);
+        String key = template + "/" + hash;
+        if (Files.exists(shared.resolve(COMPLETE)) || !promoting.add(key)) return;
+
+        Path tmp = shared.resolveSibling(hash + ".tmp");
+        try {
+            Files.createDirectories(shared.getParent());
+            ops.deleteTree(tmp);
+            Files.createDirectories(tmp);
+            long bytes = 0;
+            int copied = 0;
+            for (String rel : dirs) {
+                Path src = instanceDir.resolve(rel).normalize();
+                // missing, or already a link to a shared copy
+                if (!src.startsWith(instanceDir) || !Files.isDirectory(src, LinkOption.NOFOLLOW_LINKS)) continue;
+                ops.copyTree(src, tmp.resolve(rel), List.of());
+                bytes += readOnly(tmp.resolve(rel));
+                copied++;
+            }
+            if (copied == 0) return;
+
+            Files.createFile(tmp.resolve(COMPLETE));
+            ops.deleteTree(shared); // incomplete leftover
+            Files.move(tmp, shared, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("[Host] Shared runtime cache for " + template + " jar " + hash.substring(0, 12) + " created from "
+                    + instanceDir.getFileName() + " (" + bytes / (1024 * 1024) + " MB)");
+        } finally {
+            promoting.remove(key);
+            if (Files.exists(tmp, LinkOption.NOFOLLOW_LINKS)) {
+                writable(tmp);
+                ops.deleteTree(tmp);
+            }
+        }
+    }
+
+    /** Complete shared copies on disk. */
+    public int caches() throws IOException {
+        int n = 0;
+        try (DirectoryStream<Path> templates = Files.newDirectoryStream(dir)) {
+            for (Path t : templates) {
+                if (!Files.isDirectory(t)) continue;
+                try (DirectoryStream<Path> ds = Files.newDirectoryStream(t)) {
+                    for (Path p : ds) if (Files.exists(p.resolve(COMPLETE))) n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    private Path sharedDir(String template, Path jar) throws IOException {
+        return dir.resolve(template).resolve(jarHashes.sha256(jar));
+    }
+
+    /** Directories linked into instances since host start. */
+    public long links() {
+        return links.sum();
+    }
+
+    private static long readOnly(Path root) throws IOException {
+        long[] bytes = {0};
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                bytes[0] += attrs.size();
+                file.toFile().setWritable(false, false);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException e) {
+                d.toFile().setWritable(false, false);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return bytes[0];
+    }
+
+    private static void writable(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) {
+                d.toFile().setWritable(true, true);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,206 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every start (API, auto-start on boot, hot pool refill) goes through here so a reboot doesn't launch dozens of
+ * JVMs at once.
+ *
+ * At most {@code maxConcurrent} instances are STARTING; the next queued start is admitted as soon as one of them
+ * settles (RUNNING, CRASHED, exited), not after a fixed delay. A slot whose instance never reports readiness is
+ * given back after {@code slotTimeoutMs}. The queue is ordered by priority (higher first), then by arrival. A
+ * queued start that doesn't fit the memory budget yet stays queued while smaller ones behind it may go ahead.
+ */
+public final class StartScheduler {
+
+    public interface Launcher {
+        /** Launches the instance; false if it doesn't fit right now and should stay queued. */
+        boolean launch(String name) throws IOException;
+    }
+
+    private record Pending(String name, int priority, long seq, long enqueuedNanos) {}
+
+    private static final Comparator<Pending> ORDER =
+            Comparator.comparingInt(Pending::priority).reversed().thenComparingLong(Pending::seq);
+
+    private final int maxConcurrent;
+    private final long slotTimeoutMs;
+    private final Launcher launcher;
+    private final Metrics.Histogram waitTimes;
+
+    private final TreeSet<Pending> queue = new TreeSet<>(ORDER);
+    private final Map<String, Pending> queued = new HashMap<>();
+    private final Map<String, Long> admitted = new HashMap<>(); // name -> admission id, for slot timeouts
+    // admitted, launcher not yet past beginLaunch: a cancel still reaches it
+    private String launching;
+    private boolean launchCancelled;
+    private long nextSeq = 0;
+    private boolean pumpScheduled;
+    private boolean paused;
+
+    private final ScheduledExecutorService starter = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ServerFabric-Host-starter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public StartScheduler(int maxConcurrent, long slotTimeoutMs, Launcher launcher, Metrics.Histogram waitTimes) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.slotTimeoutMs = Math.max(1000, slotTimeoutMs);
+        this.launcher = launcher;
+        this.waitTimes = waitTimes;
+    }
+
+    /** Queues a start; returns false if {@code name} is already queued or starting. */
+    public synchronized boolean submit(String name, int priority) {
+        if (queued.containsKey(name) || admitted.containsKey(name)) return false;
+        Pending p = new Pending(name, priority, nextSeq++, System.nanoTime());
+        queue.add(p);
+        queued.put(name, p);
+        schedulePump();
+        return true;
+    }
+
+    /** Drops a queued start (stop/delete before it was admitted), or one admitted but not yet launched. */
+    public synchronized boolean cancel(String name) {
+        Pending p = queued.remove(name);
+        if (p != null) {
+            queue.remove(p);
+            return true;
+        }
+        if (name.equals(launching) && !launchCancelled) {
+            launchCancelled = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called by the launcher right before it starts the process; false if the start was cancelled since it was
+     * admitted. From here on a cancel no longer reaches it and stopping is up to the caller.
+     */
+    public synchronized boolean beginLaunch(String name) {
+        if (!name.equals(launching)) return true;
+        launching = null;
+        return !launchCancelled;
+    }
+
+    /** The instance left STARTING (or never will); its slot goes to the next queued start. */
+    public synchronized void settled(String name) {
+        if (admitted.remove(name) != null) schedulePump();
+    }
+
+    /** Something other than a settled start freed room (memory released); retry the queue. */
+    public synchronized void wake() {
+        if (!queue.isEmpty()) schedulePump();
+    }
+
+    /** Host drain: nothing new is admitted, the queue is kept. */
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    public synchronized void resume() {
+        paused = false;
+        if (!queue.isEmpty()) schedulePump();
+    }
+
+    public synchronized boolean isQueued(String name) {
+        return queued.containsKey(name);
+    }
+
+    public synchronized int queueDepth() {
+        return queue.size();
+    }
+
+    public synchronized int starting() {
+        return admitted.size();
+    }
+
+    public int maxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public void shutdown() {
+        starter.shutdownNow();
+    }
+
+    private void schedulePump() {
+        if (pumpScheduled) return;
+        pumpScheduled = true;
+        starter.execute(this::pump);
+    }
+
+    /** Runs on the starter thread: launches are serialized, the queue lock is not held while launching. */
+    private void pump() {
+        List<Pending> deferred = new ArrayList<>();
+        while (true) {
+            Pending next;
+            long id;
+            synchronized (this) {
+                pumpScheduled = false;
+                next = null;
+                if (!paused && admitted.size() < maxConcurrent) {
+                    for (Pending p : queue) {
+                        if (!deferred.contains(p)) {
+                            next = p;
+                            break;
+                        }
+                    }
+                }
+                if (next == null) return;
+                queue.remove(next);
+                queued.remove(next.name());
+                id = nextSeq++;
+                admitted.put(next.name(), id);
+                launching = next.name();
+                launchCancelled = false;
+            }
+
+            boolean launched;
+            try {
+                launched = launcher.launch(next.name());
+            } catch (Exception e) {
+                System.out.println("[ServerFabric-Host] Start of " + next.name() + " failed: " + e.getMessage());
+                synchronized (this) {
+                    launching = null;
+                }
+                settled(next.name());
+                continue;
+            }
+
+            synchronized (this) {
+                boolean cancelled = launchCancelled && next.name().equals(launching);
+                launching = null;
+                if (!launched && cancelled) {
+                    admitted.remove(next.name());
+                    continue;
+                }
+                if (!launched) {
+                    // doesn't fit yet: back into the queue at its old position, try the ones behind it
+                    admitted.remove(next.name());
+                    queue.add(next);
+                    queued.put(next.name(), next);
+                    deferred.add(next);
+                    continue;
+                }
+            }
+            waitTimes.observeNanos(System.nanoTime() - next.enqueuedNanos());
+
+            String name = next.name();
+            starter.schedule(() -> {
+                synchronized (this) {
+                    Long current = admitted.get(name);
+                    if (current == null || current != id) return;
+                }
+                System.out.println("[ServerFabric-Host] " + name + " not ready after " + slotTimeoutMs
+                        + " ms, admitting the next start");
+                settled(name);
+            }, slotTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
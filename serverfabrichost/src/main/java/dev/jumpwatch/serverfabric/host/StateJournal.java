@@ -0,0 +1,288 @@
+package dev.jumpwatch.serverfabric.host;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of instance state transitions (rootPath/state.journal).
+ *
+ * Each line is "<crc32 hex> <json>". Transitions are coalesced per instance for a few milliseconds and
+ * written by one thread in a single append followed by one fsync. Once the journal grows past
+ * {@link #COMPACT_BYTES} the registry index is rewritten and the journal truncated.
+ *
+ * On boot the journal is replayed on top of the index; a torn or corrupt tail (host killed mid-write)
+ * is dropped at the first bad line.
+ */
+public final class StateJournal {
+
+    public static final class Record {
+        public String name;
+        public String state;
+        public boolean autoStart;
+        public long ts;
+    }
+
+    private static final long COALESCE_MS = 5;
+    private static final long COMPACT_BYTES = 1024 * 1024;
+    private static final long RETRY_MS = 1000;
+
+    private final Path file;
+    private final InstanceRegistry registry;
+    private final ObjectMapper om;
+
+    private final Object lock = new Object();
+    private final Map<String, Record> pending = new LinkedHashMap<>();
+    private long appended = 0; // records accepted
+    private long durable = 0;  // records written + fsynced
+    private boolean closed = false;
+    private IOException failure; // last write error, until a write succeeds again
+
+    private FileChannel channel;
+    private Thread thread;
+
+    StateJournal(Path file, InstanceRegistry registry, ObjectMapper om) {
+        this.file = file;
+        this.registry = registry;
+        this.om = om;
+    }
+
+    /**
+     * Applies journaled transitions newer than what the registry already holds, then compacts and
+     * starts the writer thread. Must run after {@link InstanceRegistry#load}.
+     */
+    void replayAndOpen() throws IOException {
+        int applied = 0;
+        Replay replay = Files.exists(file) ? decodeAll(Files.readAllBytes(file), om) : new Replay(List.of(), 0, false);
+        long validBytes = replay.validBytes();
+
+        for (Record r : replay.records()) {
+            InstanceMeta meta = registry.get(r.name);
+            if (meta != null && r.ts >= meta.lastUpdated) {
+                meta.lastState = r.state;
+                meta.autoStart = r.autoStart;
+                meta.lastUpdated = r.ts;
+                applied++;
+            }
+        }
+
+        if (replay.torn()) {
+            System.out.println("[ServerFabric-Host] State journal has a torn tail after " + replay.records().size()
+                    + " record(s), discarding it");
+        }
+        if (applied > 0) {
+            System.out.println("[ServerFabric-Host] Replayed " + applied + " state change(s) from journal");
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(validBytes);
+        channel.position(validBytes);
+        if (validBytes > 0) compact();
+
+        thread = new Thread(this::run, "ServerFabric-Host-journal");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Records the current lastState/autoStart of {@code meta}. Never blocks on disk. */
+    public void append(InstanceMeta meta) {
+        Record r = new Record();
+        r.name = meta.name;
+        r.state = meta.lastState;
+        r.autoStart = meta.autoStart;
+        r.ts = meta.lastUpdated;
+
+        synchronized (lock) {
+            if (closed) return;
+            pending.remove(r.name); // re-insert so the latest transition keeps append order
+            pending.put(r.name, r);
+            appended++;
+            lock.notifyAll();
+        }
+    }
+
+    /** Blocks until everything appended so far is on disk; throws while the writer can't write it. */
+    public void flush() throws InterruptedException, IOException {
+        synchronized (lock) {
+            long target = appended;
+            while (durable < target && thread != null && thread.isAlive()) {
+                if (failure != null) throw new IOException("State journal not written: " + failure.getMessage(), failure);
+                lock.wait(100);
+            }
+        }
+    }
+
+    /** Flushes, stops the writer and folds the journal into the index. */
+    public void close() {
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // compact() below still gets the states into the index
+            System.out.println("[ServerFabric-Host] " + e.getMessage());
+        }
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            if (thread != null) thread.join(2000);
+            compact();
+            channel.close();
+        } catch (Exception e) {
+            System.out.println("[ServerFabric-Host] Journal close failed: " + e.getMessage());
+        }
+    }
+
+    private void run() {
+        while (true) {
+            List<Record> batch;
+            long upTo;
+            synchronized (lock) {
+                try {
+                    while (pending.isEmpty() && !closed) lock.wait();
+                    if (pending.isEmpty()) return;
+                    // give bursts (STARTING -> RUNNING, CRASHED -> STARTING, ...) a moment to coalesce
+                    lock.wait(COALESCE_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+                upTo = appended;
+            }
+
+            try {
+                write(batch);
+            } catch (IOException e) {
+                synchronized (lock) {
+                    if (failure == null) {
+                        System.out.println("[ServerFabric-Host] State journal write failed, retrying: " + e.getMessage());
+                    }
+                    failure = e;
+                    // back in front of anything appended since; a newer transition of the same instance wins
+                    Map<String, Record> retry = new LinkedHashMap<>();
+                    for (Record r : batch) if (!pending.containsKey(r.name)) retry.put(r.name, r);
+                    retry.putAll(pending);
+                    pending.clear();
+                    pending.putAll(retry);
+                    lock.notifyAll();
+                    if (closed) return;
+                    try {
+                        lock.wait(RETRY_MS);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+                continue;
+            }
+
+            synchronized (lock) {
+                if (failure != null) System.out.println("[ServerFabric-Host] State journal writable again");
+                failure = null;
+                durable = upTo;
+                lock.notifyAll();
+            }
+
+            try {
+                if (channel.size() >= COMPACT_BYTES) compact();
+            } catch (IOException e) {
+                System.out.println("[ServerFabric-Host] State journal compaction failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void write(List<Record> batch) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(encode(batch, om));
+        synchronized (channel) {
+            long start = channel.position();
+            try {
+                while (buf.hasRemaining()) channel.write(buf);
+                channel.force(false);
+            } catch (IOException e) {
+                // a partial line would end replay there and hide every later record
+                try {
+                    channel.truncate(start);
+                    channel.position(start);
+                } catch (IOException ignored) {
+                }
+                throw e;
+            }
+        }
+    }
+
+    /** The registry already holds every journaled state, so an index write makes the journal redundant. */
+    private void compact() throws IOException {
+        synchronized (channel) {
+            registry.flush();
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        }
+    }
+
+    /** The intact records of a journal, the length of that prefix, and whether anything after it was dropped. */
+    record Replay(List<Record> records, long validBytes, boolean torn) {}
+
+    /** Lines of "&lt;crc32 hex&gt; &lt;json&gt;\n", one per record. */
+    static byte[] encode(List<Record> batch, ObjectMapper om) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(batch.size() * 128);
+        for (Record r : batch) {
+            byte[] json = om.writeValueAsBytes(r);
+            CRC32 crc = new CRC32();
+            crc.update(json);
+            out.write(String.format("%08x ", crc.getValue()).getBytes(StandardCharsets.US_ASCII));
+            out.write(json);
+            out.write('\n');
+        }
+        return out.toByteArray();
+    }
+
+    /** Decodes up to the first line that is unterminated or fails its CRC; everything from there on is torn. */
+    static Replay decodeAll(byte[] data, ObjectMapper om) {
+        List<Record> records = new ArrayList<>();
+        int pos = 0;
+        while (pos < data.length) {
+            int nl = indexOf(data, (byte) '\n', pos);
+            if (nl < 0) return new Replay(records, pos, true);
+
+            Record r = decode(data, pos, nl, om);
+            if (r == null) return new Replay(records, pos, true);
+
+            records.add(r);
+            pos = nl + 1;
+        }
+        return new Replay(records, pos, false);
+    }
+
+    private static Record decode(byte[] data, int from, int to, ObjectMapper om) {
+        if (to - from < 10 || data[from + 8] != ' ') return null;
+        try {
+            long expected = Long.parseLong(new String(data, from, 8, StandardCharsets.US_ASCII), 16);
+            CRC32 crc = new CRC32();
+            crc.update(data, from + 9, to - from - 9);
+            if (crc.getValue() != expected) return null;
+            return om.readValue(data, from + 9, to - from - 9, Record.class);
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static int indexOf(byte[] data, byte b, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == b) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,107 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Monotonic status version for /status ETags and long-polls.
+ *
+ * Every visible change (create, claim, state transition, delete) bumps the version and stamps the
+ * instance with it. Versions start at the boot wall-clock time, but a version alone can still collide with
+ * one from a previous host run (clock stepped back, many changes in a short run). The random per-run
+ * {@link #epoch} tells them apart: it is part of the ETag, and a since= from another epoch gets a full listing.
+ */
+final class StatusTracker {
+
+    private static final int MAX_TOMBSTONES = 4096;
+
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private final Object monitor = new Object();
+    private final Map<String, Long> versions = new HashMap<>();
+    private final LinkedHashMap<String, Long> removed = new LinkedHashMap<>();
+    private long version = System.currentTimeMillis();
+    private long floor = version; // deltas for since >= floor are complete
+
+    void touch(String name) {
+        synchronized (monitor) {
+            version++;
+            versions.put(name, version);
+            removed.remove(name);
+            monitor.notifyAll();
+        }
+    }
+
+    void remove(String name) {
+        synchronized (monitor) {
+            version++;
+            versions.remove(name);
+            removed.put(name, version);
+            if (removed.size() > MAX_TOMBSTONES) {
+                var it = removed.entrySet().iterator();
+                floor = it.next().getValue();
+                it.remove();
+            }
+            monitor.notifyAll();
+        }
+    }
+
+    /** A host-level field of /status (capacity) changed without any visible instance changing. */
+    void bump() {
+        synchronized (monitor) {
+            version++;
+            monitor.notifyAll();
+        }
+    }
+
+    String epoch() {
+        return epoch;
+    }
+
+    long version() {
+        synchronized (monitor) {
+            return version;
+        }
+    }
+
+    long versionOf(String name) {
+        synchronized (monitor) {
+            return versions.getOrDefault(name, 0L);
+        }
+    }
+
+    /** Blocks until the version moves past {@code since} or {@code waitMs} elapses. Returns the current version. */
+    long await(long since, long waitMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMs;
+        synchronized (monitor) {
+            while (version == since) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) break;
+                monitor.wait(left);
+            }
+            return version;
+        }
+    }
+
+    /** True if a delta since {@code since} can be computed (same host run, tombstones still retained). */
+    boolean canDelta(long since) {
+        synchronized (monitor) {
+            return since >= floor && since <= version;
+        }
+    }
+
+    Set<String> changedSince(long since) {
+        synchronized (monitor) {
+            Set<String> out = new HashSet<>();
+            for (var e : versions.entrySet()) if (e.getValue() > since) out.add(e.getKey());
+            return out;
+        }
+    }
+
+    List<String> removedSince(long since) {
+        synchronized (monitor) {
+            List<String> out = new ArrayList<>();
+            for (var e : removed.entrySet()) if (e.getValue() > since) out.add(e.getKey());
+            return out;
+        }
+    }
+}
@@ -3,19 +3,78 @@ package dev.jumpwatch.serverfabric.host;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.util.Map;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 public final class TemplateManager {
 
+    /** A baked version: {@code inputs} is the hash of the template tree it was baked from. */
+    public static final class BakeInfo {
+        public String template;
+        public int version;
+        public String inputs;
+        public long bakedAt;
+        public long tookMs;
+    }
+
+    /** Where instances of a template are provisioned from right now; {@code stale} if a rebake is due. */
+    public record Resolved(Path dir, int bakedVersion, boolean stale, String inputs) {
+        /** What an instance provisioned from this is a copy of: the template's files, and which bake of them. */
+        public String source() {
+            return inputs + "@v" + bakedVersion;
+        }
+
+        /** Names the tree at {@code dir}: the template itself, or "&lt;template&gt;@vN" for a baked version. */
+        public String tree(String templateName) {
+            return bakedVersion == 0 ? templateName : templateName + "@v" + bakedVersion;
+        }
+    }
+
+    /** Boots the scratch copy until ready and stops it cleanly (supplied by {@link InstanceManager}). */
+    public interface Booter {
+        void boot(String template, TemplateMeta tm, Path dir) throws IOException;
+    }
+
     private final Path templatesDir;
+    private final Path bakedDir;
     private final ObjectMapper om;
+    private final FileTreeOps ops;
     private final Map<String, TemplateMeta> cache = new ConcurrentHashMap<>();
+    // inputs hash per template, kept until the watcher sees a change under the template (or /templates/rebake)
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+    private final Map<String, Long> changes = new ConcurrentHashMap<>(); // bumped on every change, guards stale hashes
+    private final Set<String> baking = ConcurrentHashMap.newKeySet();
+    // baked versions being copied from ("<template>/vN" -> provisions), and pruned ones; guarded by holds
+    private final Map<String, Integer> holds = new HashMap<>();
+    private final Set<String> retired = new HashSet<>();
+    private final Set<String> deferred = new HashSet<>();
+
+    private final WatchService watcher; // null: no file events here, every resolve() hashes
+    private final Map<WatchKey, String> watchedDirs = new ConcurrentHashMap<>();
+    private final Set<String> watchedTemplates = ConcurrentHashMap.newKeySet();
 
-    public TemplateManager(Path templatesDir, ObjectMapper om) {
+    public TemplateManager(Path templatesDir, Path bakedDir, ObjectMapper om, FileTreeOps ops) {
         this.templatesDir = templatesDir;
+        this.bakedDir = bakedDir;
         this.om = om;
+        this.ops = ops;
+
+        WatchService ws = null;
+        try {
+            ws = templatesDir.getFileSystem().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            System.out.println("[Host] No file watching for templates, hashing them on every create: " + e.getMessage());
+        }
+        this.watcher = ws;
+        if (ws != null) {
+            Thread t = new Thread(this::watchLoop, "ServerFabric-Host-template-watch");
+            t.setDaemon(true);
+            t.start();
+        }
     }
 
     public TemplateMeta get(String templateName) throws IOException {
@@ -34,6 +93,269 @@ public final class TemplateManager {
         cache.remove(templateName);
     }
 
+    /**
+     * The newest baked version if it was baked from the template as it is now, otherwise the template itself.
+     * The template's files are hashed (one stat walk) the first time and again only after the watcher saw them
+     * change or {@link #forgetInputs} was called; a change also drops the cached template.json.
+     */
+    public Resolved resolve(String templateName) throws IOException {
+        Path raw = templatesDir.resolve(templateName);
+        String inputs = inputs(templateName, raw);
+
+        TemplateMeta tm = get(templateName);
+        boolean bakeEnabled = tm != null && tm.bake != null && tm.bake.enabled;
+        BakeInfo current = current(templateName);
+        if (current != null && inputs.equals(current.inputs)) {
+            return new Resolved(versionDir(templateName, current.version), current.version, false, inputs);
+        }
+        return new Resolved(raw, 0, bakeEnabled, inputs);
+    }
+
+    /**
+     * {@link #resolve}, and keeps the baked version it returns from being pruned until {@link #release}, so a
+     * provision can copy from it while a bake lands.
+     */
+    public Resolved acquire(String templateName) throws IOException {
+        while (true) {
+            Resolved r = resolve(templateName);
+            if (r.bakedVersion() == 0) return r;
+            String key = templateName + "/v" + r.bakedVersion();
+            synchronized (holds) {
+                // pruned between resolve and here: a newer version is current now
+                if (retired.contains(key)) continue;
+                holds.merge(key, 1, Integer::sum);
+                return r;
+            }
+        }
+    }
+
+    public void release(String templateName, Resolved r) {
+        if (r == null || r.bakedVersion() == 0) return;
+        String key = templateName + "/v" + r.bakedVersion();
+        synchronized (holds) {
+            if (holds.merge(key, -1, Integer::sum) > 0) return;
+            holds.remove(key);
+            if (!deferred.remove(key)) return;
+        }
+        try {
+            ops.deleteTree(versionDir(templateName, r.bakedVersion()));
+        } catch (IOException e) {
+            System.out.println("[Host] Failed to delete " + key + ": " + e.getMessage());
+        }
+    }
+
+    /** {@link Resolved#tree} names of the template and every baked version of it still on disk. */
+    public List<String> trees(String templateName) throws IOException {
+        List<String> out = new ArrayList<>();
+        out.add(templateName);
+        Path dir = bakedDir.resolve(templateName);
+        if (!Files.isDirectory(dir)) return out;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "v*")) {
+            for (Path p : ds) {
+                if (Files.isDirectory(p)) out.add(templateName + "@" + p.getFileName());
+            }
+        }
+        return out;
+    }
+
+    public BakeInfo current(String templateName) throws IOException {
+        Path dir = bakedDir.resolve(templateName);
+        if (!Files.isDirectory(dir)) return null;
+        BakeInfo best = null;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "v*.json")) {
+            for (Path p : ds) {
+                BakeInfo b = om.readValue(p.toFile(), BakeInfo.class);
+                if (Files.isDirectory(versionDir(templateName, b.version)) && (best == null || b.version > best.version)) {
+                    best = b;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Copies the template into a scratch directory, lets {@code booter} run it once (patched jar, remap cache,
+     * world generation, plugin data), drops bake.exclude and saves the tree as the next version. Versions beyond
+     * bake.keepVersions are deleted; one a provision is still copying from (see {@link #acquire}) goes once it is
+     * released.
+     */
+    public BakeInfo bake(String templateName, Booter booter) throws IOException {
+        Path raw = templatesDir.resolve(templateName);
+        if (!Files.isDirectory(raw)) throw new IOException("Template not found: " + templateName);
+        if (!baking.add(templateName)) throw new IOException("Template is already being baked: " + templateName);
+
+        Path scratch = bakedDir.resolve(templateName).resolve(".scratch");
+        try {
+            long t0 = System.currentTimeMillis();
+            invalidate(templateName);
+            TemplateMeta tm = get(templateName);
+            String inputs = inputsHash(raw);
+
+            ops.deleteTree(scratch);
+            ops.copyTree(raw, scratch, List.of());
+            booter.boot(templateName, tm, scratch);
+
+            TemplateMeta.Bake b = tm.bake == null ? new TemplateMeta.Bake() : tm.bake;
+            for (String rel : b.exclude) {
+                Path p = scratch.resolve(rel).normalize();
+                if (p.startsWith(scratch) && !p.equals(scratch)) ops.deleteTree(p);
+            }
+
+            BakeInfo previous = current(templateName);
+            BakeInfo info = new BakeInfo();
+            info.template = templateName;
+            info.version = previous == null ? 1 : previous.version + 1;
+            info.inputs = inputs;
+            info.bakedAt = System.currentTimeMillis();
+            info.tookMs = info.bakedAt - t0;
+
+            Path target = versionDir(templateName, info.version);
+            ops.deleteTree(target); // left over from an interrupted bake
+            Files.move(scratch, target, StandardCopyOption.ATOMIC_MOVE);
+            Path json = bakedDir.resolve(templateName).resolve("v" + info.version + ".json");
+            Path tmp = json.resolveSibling(json.getFileName() + ".tmp");
+            om.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), info);
+            Files.move(tmp, json, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            prune(templateName, info.version - Math.max(1, b.keepVersions));
+            System.out.println("[Host] Baked template " + templateName + " v" + info.version + " in " + info.tookMs + " ms");
+            return info;
+        } finally {
+            try {
+                ops.deleteTree(scratch);
+            } catch (IOException ignored) {
+            }
+            baking.remove(templateName);
+        }
+    }
+
+    /** Drops what is known about the template's files (edits the watcher can't see, e.g. on a network mount). */
+    public void forgetInputs(String templateName) {
+        changed(templateName);
+    }
+
+    private String inputs(String templateName, Path raw) throws IOException {
+        String known = fingerprints.get(templateName);
+        if (known != null) return known;
+
+        // watch before hashing, so an edit during the walk is not missed
+        boolean watched = watch(templateName, raw);
+        long before = changes.getOrDefault(templateName, 0L);
+        String inputs = inputsHash(raw);
+        invalidate(templateName);
+        if (watched && changes.getOrDefault(templateName, 0L) == before) fingerprints.put(templateName, inputs);
+        return inputs;
+    }
+
+    private void changed(String templateName) {
+        changes.merge(templateName, 1L, Long::sum);
+        fingerprints.remove(templateName);
+        invalidate(templateName);
+    }
+
+    private boolean watch(String templateName, Path raw) {
+        if (watcher == null) return false;
+        if (watchedTemplates.contains(templateName)) return true;
+        try {
+            registerTree(templateName, raw);
+            watchedTemplates.add(templateName);
+            return true;
+        } catch (IOException e) {
+            System.out.println("[Host] Can't watch template " + templateName + ", hashing it on every create: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void registerTree(String templateName, Path dir) throws IOException {
+        try (var walk = Files.walk(dir)) {
+            for (Path d : walk.filter(Files::isDirectory).toList()) {
+                WatchKey key = d.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirs.put(key, templateName);
+            }
+        }
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            String templateName = watchedDirs.get(key);
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> ev : key.pollEvents()) {
+                if (templateName == null) continue;
+                if (ev.kind() == StandardWatchEventKinds.ENTRY_CREATE && ev.context() instanceof Path rel
+                        && Files.isDirectory(dir.resolve(rel), LinkOption.NOFOLLOW_LINKS)) {
+                    try {
+                        registerTree(templateName, dir.resolve(rel));
+                    } catch (IOException e) {
+                        // next resolve() re-registers the whole template
+                        watchedTemplates.remove(templateName);
+                    }
+                }
+            }
+            if (templateName != null) changed(templateName);
+            if (!key.reset()) {
+                // directory is gone; the template is watched again from scratch on its next resolve()
+                watchedDirs.remove(key);
+                if (templateName != null) watchedTemplates.remove(templateName);
+            }
+        }
+    }
+
+    public boolean isBaking(String templateName) {
+        return baking.contains(templateName);
+    }
+
+    private void prune(String templateName, int upToVersion) throws IOException {
+        Path dir = bakedDir.resolve(templateName);
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "v*.json")) {
+            for (Path p : ds) {
+                BakeInfo b = om.readValue(p.toFile(), BakeInfo.class);
+                if (b.version > upToVersion) continue;
+                String key = templateName + "/v" + b.version;
+                boolean held;
+                synchronized (holds) {
+                    retired.add(key);
+                    held = holds.containsKey(key);
+                    if (held) deferred.add(key);
+                }
+                Files.deleteIfExists(p);
+                if (!held) ops.deleteTree(versionDir(templateName, b.version));
+            }
+        }
+    }
+
+    private Path versionDir(String templateName, int version) {
+        return bakedDir.resolve(templateName).resolve("v" + version);
+    }
+
+    /** Relative path, size and mtime of every file: any edit, addition or removal changes it. */
+    private static String inputsHash(Path dir) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        List<Path> paths;
+        try (var s = Files.walk(dir)) {
+            paths = s.sorted().toList();
+        }
+        for (Path p : paths) {
+            BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class);
+            if (!a.isRegularFile()) continue;
+            String line = dir.relativize(p).toString().replace('\\', '/') + '\0' + a.size() + '\0'
+                    + a.lastModifiedTime().toMillis() + '\n';
+            md.update(line.getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
     private TemplateMeta load(String templateName) throws IOException {
         Path dir = templatesDir.resolve(templateName);
         Path metaFile = dir.resolve("template.json");
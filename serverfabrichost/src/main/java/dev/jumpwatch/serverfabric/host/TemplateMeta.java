@@ -12,6 +12,13 @@ public final class TemplateMeta {
     public Jvm jvm = new Jvm();
     public Pool pool = new Pool();
     public Data data = new Data();
+    public Provisioning provisioning = new Provisioning();
+    public List<Pattern> patterns = new ArrayList<>();
+    public Start start = new Start();
+    public Stop stop = new Stop();
+    public Restart restart = new Restart();
+    public Bake bake = new Bake();
+    public SharedRuntime runtime = new SharedRuntime();
 
     public static final class Jvm {
         public List<String> args = new ArrayList<>(); // if empty -> fallback to host default
@@ -23,6 +30,7 @@ public final class TemplateMeta {
         public int maxIdle = 0;
         public boolean warmupOnBoot = false;
         public String reusePolicy = "NONE";
+        public int hot = 0; // instances kept RUNNING with no players, handed out by /server/claim
     }
 
     public static final class Data {
@@ -32,6 +40,57 @@ public final class TemplateMeta {
         public List<String> resetPaths = new ArrayList<>();
     }
 
+    public static final class Provisioning {
+        // relative globs that are never written by the server; these may be hard linked from the template
+        public List<String> immutable = new ArrayList<>(InstanceProvisioner.DEFAULT_IMMUTABLE);
+    }
+
+    public static final class Start {
+        // queued starts of higher-priority templates are launched first (hot standbys always go last)
+        public int priority = 0;
+    }
+
+    public static final class Stop {
+        // "stop" on the console, then SIGTERM after graceSeconds, then SIGKILL after killAfterSeconds more
+        public int graceSeconds = 30;
+        public int killAfterSeconds = 10;
+    }
+
+    public static final class Bake {
+        // boot the template once and provision instances from the result; rebaked when a template file changes
+        public boolean enabled = false;
+        public int timeoutSeconds = 600;
+        public int keepVersions = 2;
+        // relative paths removed from the baked tree
+        public List<String> exclude = new ArrayList<>(List.of("logs", "crash-reports",
+                "world/session.lock", "world_nether/session.lock", "world_the_end/session.lock"));
+    }
+
+    public static final class SharedRuntime {
+        // trees the server jar generates on first start; shared read-only per template and jar hash once an
+        // instance ran. Opt-in: the linked dirs become read-only for the server
+        public boolean shared = false;
+        public List<String> dirs = new ArrayList<>(List.of("cache", "libraries", "versions"));
+    }
+
+    public static final class Restart {
+        // CRASHED instances are started again after backoffSeconds, doubled for every restart in the window;
+        // a crash after maxRestarts restarts within windowSeconds leaves it down as CRASH_LOOP
+        public boolean enabled = true;
+        public int maxRestarts = 5;
+        public int windowSeconds = 600;
+        public int backoffSeconds = 2;
+        public int maxBackoffSeconds = 120;
+        public int logLines = 50; // console lines kept from the last crash
+    }
+
+    public static final class Pattern {
+        // literal bytes searched for in the console output (not a regex)
+        public String match = null;
+        // READY | CRASH | PLAYER_JOIN | PLAYER_LEAVE, anything else is published as an event of that type
+        public String on = null;
+    }
+
     public static final class Readiness {
         // LOG_CONTAINS | TCP_PORT | NONE
         public String type = "LOG_CONTAINS";
@@ -0,0 +1,123 @@
+package dev.jumpwatch.serverfabric.host;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deferred deletion: directories are renamed into rootPath/trash/ (cheap, atomic) and a single
+ * low-priority thread removes them at a bounded rate (config: trashReapFilesPerSecond) so a big
+ * world delete never competes with running servers for disk.
+ *
+ * Whatever is left in trash/ after a restart is picked up again on startup.
+ */
+public final class TrashReaper {
+
+    private final Path trashDir;
+    private final int filesPerSecond;
+    private final LinkedBlockingQueue<Path> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+
+    public TrashReaper(Path trashDir, int filesPerSecond) throws IOException {
+        this.trashDir = trashDir;
+        this.filesPerSecond = Math.max(1, filesPerSecond);
+        Files.createDirectories(trashDir);
+
+        this.thread = new Thread(this::run, "ServerFabric-Host-trash");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    /** Queues anything left in trash/ by a previous run and starts the reaper thread. */
+    public void start() throws IOException {
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(trashDir)) {
+            for (Path p : ds) queue.add(p);
+        }
+        if (!queue.isEmpty()) {
+            System.out.println("[ServerFabric-Host] Resuming trash reaping (" + queue.size() + " item(s))");
+        }
+        thread.start();
+    }
+
+    /**
+     * Moves {@code dir} into trash/ and returns immediately. Throws if the rename is not possible
+     * (e.g. trash/ on another filesystem); the caller then deletes inline.
+     */
+    public void discard(Path dir) throws IOException {
+        String base = dir.getFileName().toString() + "." + System.currentTimeMillis();
+        Path target = trashDir.resolve(base);
+        for (int i = 1; Files.exists(target, LinkOption.NOFOLLOW_LINKS); i++) target = trashDir.resolve(base + "-" + i);
+
+        Files.move(dir, target, StandardCopyOption.ATOMIC_MOVE);
+        queue.add(target);
+    }
+
+    public int pending() {
+        return queue.size();
+    }
+
+    private void run() {
+        while (true) {
+            Path next;
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                reap(next);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                System.out.println("[ServerFabric-Host] Trash reap failed for " + next.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void reap(Path root) throws IOException, InterruptedException {
+        if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS)) return;
+
+        // budget per 100 ms slice keeps the pace smooth instead of bursting once a second
+        final int perSlice = Math.max(1, filesPerSecond / 10);
+        final long[] slice = { System.nanoTime(), 0 };
+
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.deleteIfExists(file);
+                    pace();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    Files.deleteIfExists(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                private void pace() throws IOException {
+                    if (++slice[1] < perSlice) return;
+                    long elapsed = System.nanoTime() - slice[0];
+                    long remaining = TimeUnit.MILLISECONDS.toNanos(100) - elapsed;
+                    if (remaining > 0) {
+                        try {
+                            TimeUnit.NANOSECONDS.sleep(remaining);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException("interrupted");
+                        }
+                    }
+                    slice[0] = System.nanoTime();
+                    slice[1] = 0;
+                }
+            });
+        } catch (IOException e) {
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+            throw e;
+        }
+    }
+}
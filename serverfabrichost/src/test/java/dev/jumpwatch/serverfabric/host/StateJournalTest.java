@@ -0,0 +1,181 @@
+package dev.jumpwatch.serverfabric.host;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateJournalTest {
+
+    private final ObjectMapper om = new ObjectMapper();
+
+    private final List<StateJournal> journals = new ArrayList<>();
+
+    @TempDir
+    Path root;
+
+    @AfterEach
+    void stopWriters() {
+        // "killed" runs are never closed by the tests themselves; stop their writers before the temp dir goes
+        for (StateJournal j : journals) j.close();
+    }
+
+    @Test
+    void decodesEveryIntactRecord() throws IOException {
+        byte[] data = StateJournal.encode(List.of(record("a", "STARTING", 1), record("a", "RUNNING", 2)), om);
+
+        StateJournal.Replay replay = StateJournal.decodeAll(data, om);
+
+        assertFalse(replay.torn());
+        assertEquals(data.length, replay.validBytes());
+        assertEquals(List.of("STARTING", "RUNNING"), replay.records().stream().map(r -> r.state).toList());
+    }
+
+    @Test
+    void tornTailIsDroppedAtTheLastCompleteLine() throws IOException {
+        byte[] first = StateJournal.encode(List.of(record("a", "STARTING", 1)), om);
+        byte[] both = StateJournal.encode(List.of(record("a", "STARTING", 1), record("a", "RUNNING", 2)), om);
+        // host killed halfway through the second line
+        byte[] torn = Arrays.copyOf(both, first.length + (both.length - first.length) / 2);
+
+        StateJournal.Replay replay = StateJournal.decodeAll(torn, om);
+
+        assertTrue(replay.torn());
+        assertEquals(first.length, replay.validBytes());
+        assertEquals(1, replay.records().size());
+        assertEquals("STARTING", replay.records().get(0).state);
+    }
+
+    @Test
+    void badCrcStopsReplayAtThatLine() throws IOException {
+        byte[] first = StateJournal.encode(List.of(record("a", "STARTING", 1)), om);
+        byte[] data = StateJournal.encode(List.of(record("a", "STARTING", 1), record("a", "RUNNING", 2),
+                record("a", "STOPPED", 3)), om);
+        // flip one byte in the second record's JSON; the third is intact but comes after the damage
+        int at = indexOf(data, "RUNNING", first.length);
+        data[at] = 'X';
+
+        StateJournal.Replay replay = StateJournal.decodeAll(data, om);
+
+        assertTrue(replay.torn());
+        assertEquals(first.length, replay.validBytes());
+        assertEquals(1, replay.records().size());
+    }
+
+    @Test
+    void missingNewlineOnTheLastLineCountsAsTorn() throws IOException {
+        byte[] data = StateJournal.encode(List.of(record("a", "RUNNING", 1)), om);
+
+        StateJournal.Replay replay = StateJournal.decodeAll(Arrays.copyOf(data, data.length - 1), om);
+
+        assertTrue(replay.torn());
+        assertEquals(0, replay.validBytes());
+        assertTrue(replay.records().isEmpty());
+    }
+
+    @Test
+    void replaysOnTopOfTheIndexAfterCompaction() throws Exception {
+        Files.createDirectories(root.resolve("instances").resolve("a"));
+
+        // first run: one transition, clean shutdown folds it into the index and empties the journal
+        InstanceRegistry registry = registry();
+        StateJournal journal = journal(registry);
+        journal.replayAndOpen();
+        InstanceMeta a = registry.get("a");
+        transition(a, "RUNNING", true, 10);
+        journal.append(a);
+        journal.close();
+        journals.remove(journal);
+        assertEquals(0, Files.size(root.resolve("state.journal")));
+
+        // second run: sees RUNNING from the index, then is killed right after its transition is durable
+        registry = registry();
+        journal = journal(registry);
+        journal.replayAndOpen();
+        a = registry.get("a");
+        assertEquals("RUNNING", a.lastState);
+        assertTrue(a.autoStart);
+        transition(a, "STOPPED", false, 20);
+        journal.append(a);
+        journal.flush();
+
+        // third run: the index still says RUNNING, the journal says STOPPED
+        registry = registry();
+        journal(registry).replayAndOpen();
+        a = registry.get("a");
+        assertEquals("STOPPED", a.lastState);
+        assertFalse(a.autoStart);
+        assertEquals(20, a.lastUpdated);
+    }
+
+    @Test
+    void hostKilledMidWriteKeepsTheDurablePrefix() throws Exception {
+        Files.createDirectories(root.resolve("instances").resolve("a"));
+        Path file = root.resolve("state.journal");
+        byte[] good = StateJournal.encode(List.of(record("a", "RUNNING", 10)), om);
+        Files.write(file, good);
+        Files.write(file, "0badc0de {\"name\":\"a\",\"sta".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+
+        InstanceRegistry registry = registry();
+        StateJournal journal = journal(registry);
+        journal.replayAndOpen();
+
+        assertEquals("RUNNING", registry.get("a").lastState);
+        // replay compacted into the index, so nothing of the torn tail is left to trip the next boot
+        assertEquals(0, Files.size(file));
+    }
+
+    private InstanceRegistry registry() throws IOException {
+        InstanceRegistry registry = new InstanceRegistry(root.resolve("instances"), root.resolve("instances.idx"), om);
+        registry.load(dir -> {
+            InstanceMeta m = new InstanceMeta();
+            m.lastState = "STOPPED";
+            return m;
+        });
+        // runs in one test share the index file; without the delayed background write it only changes when
+        // the test compacts, like a host that is killed before its next flush
+        registry.shutdown();
+        return registry;
+    }
+
+    private StateJournal journal(InstanceRegistry registry) {
+        StateJournal journal = new StateJournal(root.resolve("state.journal"), registry, om);
+        journals.add(journal);
+        return journal;
+    }
+
+    private static void transition(InstanceMeta meta, String state, boolean autoStart, long ts) {
+        meta.lastState = state;
+        meta.autoStart = autoStart;
+        meta.lastUpdated = ts;
+    }
+
+    private static StateJournal.Record record(String name, String state, long ts) {
+        StateJournal.Record r = new StateJournal.Record();
+        r.name = name;
+        r.state = state;
+        r.ts = ts;
+        return r;
+    }
+
+    private static int indexOf(byte[] data, String needle, int from) {
+        byte[] n = needle.getBytes(StandardCharsets.US_ASCII);
+        outer:
+        for (int i = from; i <= data.length - n.length; i++) {
+            for (int j = 0; j < n.length; j++) if (data[i + j] != n[j]) continue outer;
+            return i;
+        }
+        throw new AssertionError(needle + " not found");
+    }
+}
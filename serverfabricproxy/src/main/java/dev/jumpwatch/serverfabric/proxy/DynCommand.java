@@ -20,7 +20,7 @@ public final class DynCommand extends Command {
     @Override
     public void execute(CommandSender sender, String[] args) {
         if (args.length == 0) {
-            sender.sendMessage(ChatColor.YELLOW + "Usage: /dyn create <template> <name> | start <name> | stop <name> | delete <name> | list");
+            sender.sendMessage(ChatColor.YELLOW + "Usage: /dyn create <template> <name> | bulk <template> <count> [prefix] | start <name> | stop <name> | delete <name> | list");
             return;
         }
 
@@ -44,21 +44,28 @@ public final class DynCommand extends Command {
                     // create a unique instance name
                     String name = template + "-" + (System.currentTimeMillis() % 100000);
 
-                    sender.sendMessage(ChatColor.YELLOW + "Creating " + name + " from template " + template + "...");
-
                     ProxyServer.getInstance().getScheduler().runAsync(plugin, () -> {
                         try {
-                            HostClient.CreateResponse created = host.create(template, name);
+                            // a hot standby is already RUNNING, so we can skip create/start/wait entirely
+                            HostClient.CreateResponse claimed = host.claim(template);
+                            HostClient.CreateResponse created = claimed != null ? claimed : host.create(template, name);
+
+                            // the name the host actually gave it: a claimed standby has its own
+                            ProxyServer.getInstance().getScheduler().runAsync(plugin, () ->
+                                    player.sendMessage(ChatColor.YELLOW + (claimed != null
+                                            ? "Claimed " + created.name + " from template " + template + "..."
+                                            : "Created " + created.name + " from template " + template + ", starting..."))
+                            );
 
                             // register into proxy (main thread)
                             ProxyServer.getInstance().getScheduler().runAsync(plugin, () ->
                                     plugin.registerServer(created.name, "127.0.0.1", created.port)
                             );
 
-                            host.start(created.name);
+                            if (claimed == null) host.start(created.name);
 
                             // wait for readiness
-                            boolean ready = waitUntilRunning(created.name, 60_000);
+                            boolean ready = claimed != null || waitUntilRunning(created.name, 60_000);
 
                             if (!ready) {
                                 ProxyServer.getInstance().getScheduler().runAsync(plugin, () ->
@@ -95,7 +102,42 @@ public final class DynCommand extends Command {
                     HostClient.CreateResponse res = host.create(template, name);
                     plugin.registerServer(res.name, "127.0.0.1", res.port);
 
-                    sender.sendMessage(ChatColor.GREEN + "Created " + res.name + " on port " + res.port);
+                    sender.sendMessage(ChatColor.GREEN + "Created " + res.name + " on port " + res.port
+                            + (res.strategy.isEmpty() ? "" : " (" + res.strategy.toLowerCase() + ")"));
+                    break;
+                }
+                case "bulk": {
+                    if (args.length < 3) { sender.sendMessage(ChatColor.RED + "Usage: /dyn bulk <template> <count> [prefix]"); return; }
+                    String template = args[1];
+                    int count;
+                    try {
+                        count = Integer.parseInt(args[2]);
+                    } catch (NumberFormatException e) {
+                        sender.sendMessage(ChatColor.RED + "Count must be a number.");
+                        return;
+                    }
+                    String prefix = args.length > 3 ? args[3] : template + "-" + (System.currentTimeMillis() % 100000);
+
+                    sender.sendMessage(ChatColor.YELLOW + "Creating and starting " + count + " x " + template + " as " + prefix + "-N...");
+
+                    ProxyServer.getInstance().getScheduler().runAsync(plugin, () -> {
+                        try {
+                            // register each instance as soon as the host reports it, wait up to 2 min for them to come up
+                            host.bulk(template, count, prefix, true, 120_000, e -> {
+                                switch (e.event) {
+                                    case "CREATED" -> plugin.registerServer(e.name, "127.0.0.1", e.port);
+                                    case "FAILED" -> sender.sendMessage(ChatColor.RED + "- " + e.name + ": " + e.error);
+                                    case "ERROR" -> sender.sendMessage(ChatColor.RED + "Bulk create aborted: " + e.error);
+                                    case "DONE" -> sender.sendMessage((e.failed == 0 ? ChatColor.GREEN : ChatColor.YELLOW)
+                                            + "Bulk " + template + ": " + e.created + "/" + count + " created, "
+                                            + e.running + " running, " + e.failed + " failed");
+                                    default -> { }
+                                }
+                            });
+                        } catch (Exception e) {
+                            sender.sendMessage(ChatColor.RED + "Error: " + e.getMessage());
+                        }
+                    });
                     break;
                 }
                 case "start": {
@@ -153,13 +195,8 @@ public final class DynCommand extends Command {
         return src.substring(a, b);
     }
     private boolean waitUntilRunning(String name, long timeoutMs) throws Exception {
-        long start = System.currentTimeMillis();
-        while (System.currentTimeMillis() - start < timeoutMs) {
-            String state = host.getState(name); // we’ll add this below
-            if ("RUNNING".equalsIgnoreCase(state)) return true;
-            if ("CRASHED".equalsIgnoreCase(state)) throw new Exception("Server crashed while starting");
-            Thread.sleep(500);
-        }
-        return false;
+        String state = host.awaitState(name, timeoutMs, "RUNNING", "CRASHED");
+        if ("CRASHED".equalsIgnoreCase(state)) throw new Exception("Server crashed while starting");
+        return "RUNNING".equalsIgnoreCase(state);
     }
 }
\ No newline at end of file
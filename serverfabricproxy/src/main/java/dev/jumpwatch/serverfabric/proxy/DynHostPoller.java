@@ -4,11 +4,13 @@ import net.md_5.bungee.api.ProxyServer;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public final class DynHostPoller {
 
     private final DynProxyPlugin plugin;
     private final HostRegistry hosts;
+    private final AtomicBoolean sweepQueued = new AtomicBoolean(false);
 
     public DynHostPoller(DynProxyPlugin plugin, HostRegistry hosts) {
         this.plugin = plugin;
@@ -21,7 +23,16 @@ public final class DynHostPoller {
         }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
     }
 
-    private void pollOnce() {
+    /** Runs one consistency sweep soon (event stream connected fresh or asked to resync); calls coalesce. */
+    public void sweepAsync() {
+        if (!sweepQueued.compareAndSet(false, true)) return;
+        ProxyServer.getInstance().getScheduler().runAsync(plugin, () -> {
+            sweepQueued.set(false);
+            pollOnce();
+        });
+    }
+
+    private synchronized void pollOnce() {
         try {
             Set<String> seen = new HashSet<>();
             int newlyRegistered = 0;
@@ -38,8 +38,8 @@ public final class DynProxyMessaging implements Listener {
 
             if ("ACTION".equals(type)) {
                 String playerUuid = in.readUTF();
-                String actionType = in.readUTF();   // START/STOP/DELETE/CREATE/PLAY/COMMAND
-                String instance = in.readUTF();     // instance name (or desired name for CREATE)
+                String actionType = in.readUTF();   // START/STOP/DELETE/CREATE/BULK/PLAY/COMMAND
+                String instance = in.readUTF();     // instance name (desired name for CREATE, count for BULK)
                 String template = in.readUTF();     // template name OR command payload for COMMAND
                 handleAction(server, playerUuid, actionType, instance, template);
                 return;
@@ -149,8 +149,8 @@ public final class DynProxyMessaging implements Listener {
 
                     case "CREATE" -> {
                         // instance = desired name, templateOrCmd = template
-                        HostRegistry.HostDef h = hosts.pickHostRoundRobin();
-                        if (h == null) { reply(server, playerUuid, false, "No hosts configured"); return; }
+                        HostRegistry.HostDef h = hosts.pickHostForPlacement();
+                        if (h == null) { reply(server, playerUuid, false, "No host has room for a new instance"); return; }
 
                         String desired = instance;
                         if (desired == null || desired.isBlank()) {
@@ -167,10 +167,45 @@ public final class DynProxyMessaging implements Listener {
                         reply(server, playerUuid, true, "Created " + created.name + " on host " + h.id());
                     }
 
+                    case "BULK" -> {
+                        // instance = count, templateOrCmd = template; created by one host in one request, starts left
+                        // queued there (a plugin message can't wait minutes for boots; the event stream reports them)
+                        int count;
+                        try {
+                            count = Integer.parseInt(instance.trim());
+                        } catch (NumberFormatException e) {
+                            reply(server, playerUuid, false, "Bad count: " + instance);
+                            return;
+                        }
+                        HostRegistry.HostDef h = hosts.pickHostForPlacement();
+                        if (h == null) { reply(server, playerUuid, false, "No host has room for a new instance"); return; }
+
+                        String prefix = h.id() + "-" + templateOrCmd + "-" + (System.currentTimeMillis() % 100000);
+                        HostClient.BulkEvent[] done = new HostClient.BulkEvent[1];
+                        h.client().bulk(templateOrCmd, count, prefix, true, 0, e -> {
+                            if ("CREATED".equals(e.event)) {
+                                plugin.registerServer(e.name, h.connectHost(), e.port);
+                                hosts.mapInstanceToHost(e.name, h.id());
+                            } else if ("DONE".equals(e.event) || "ERROR".equals(e.event)) {
+                                done[0] = e;
+                            }
+                        });
+
+                        if (done[0] == null || "ERROR".equals(done[0].event)) {
+                            reply(server, playerUuid, false, "Bulk create failed on host " + h.id()
+                                    + (done[0] == null ? "" : ": " + done[0].error));
+                            return;
+                        }
+                        reply(server, playerUuid, done[0].failed == 0, "Created " + done[0].created + "/" + count
+                                + " x " + templateOrCmd + " as " + prefix + "-N on host " + h.id() + ", "
+                                + done[0].queued + " starts queued"
+                                + (done[0].failed == 0 ? "" : " (" + done[0].failed + " failed)"));
+                    }
+
                     case "PLAY" -> {
                         // templateOrCmd = template, instance can be empty (auto name)
-                        HostRegistry.HostDef h = hosts.pickHostRoundRobin();
-                        if (h == null) { reply(server, playerUuid, false, "No hosts configured"); return; }
+                        HostRegistry.HostDef h = hosts.pickHostForPlacement();
+                        if (h == null) { reply(server, playerUuid, false, "No host has room for a new instance"); return; }
 
                         String template = templateOrCmd;
                         String name;
@@ -185,6 +220,9 @@ public final class DynProxyMessaging implements Listener {
                             return;
                         }
 
+                        // auto-named plays can take a hot standby that is already running
+                        if ((instance == null || instance.isBlank()) && playHot(server, playerUuid, h, template)) return;
+
                         var created = h.client().create(template, name);
 
                         plugin.registerServer(created.name, h.connectHost(), created.port);
@@ -203,6 +241,8 @@ public final class DynProxyMessaging implements Listener {
                         HostRegistry.HostDef h = hosts.getHost(hostId);
                         if (h == null) { reply(server, playerUuid, false, "Unknown host: " + hostId); return; }
 
+                        if (playHot(server, playerUuid, h, template)) return;
+
                         String name = hostId + "-" + template + "-" + (System.currentTimeMillis() % 100000);
 
                         var created = h.client().create(template, name);
@@ -224,6 +264,17 @@ public final class DynProxyMessaging implements Listener {
         });
     }
 
+    private boolean playHot(Server server, String playerUuid, HostRegistry.HostDef h, String template) throws IOException {
+        var claimed = h.client().claim(template);
+        if (claimed == null) return false;
+
+        plugin.registerServer(claimed.name, h.connectHost(), claimed.port);
+        hosts.mapInstanceToHost(claimed.name, h.id());
+
+        reply(server, playerUuid, true, "Claimed running " + claimed.name + " on host " + h.id());
+        return true;
+    }
+
     private HostRegistry.HostDef hostForExistingInstance(String instance) {
         if (instance == null || instance.isBlank()) return null;
         String hostId = hosts.hostIdForInstance(instance);
@@ -15,6 +15,7 @@ public final class DynProxyPlugin extends Plugin {
 
     private HostRegistry hosts;
     private DynHostPoller poller;
+    private final List<HostEventStream> eventStreams = new java.util.ArrayList<>();
     private final java.util.Set<String> dynamicServers =
             java.util.Collections.newSetFromMap(new java.util.concurrent.ConcurrentHashMap<>());
 
@@ -34,15 +35,32 @@ public final class DynProxyPlugin extends Plugin {
 
         bootstrapServersFromAllHosts();
 
-        long pollSeconds = loadPollIntervalSeconds();
+        boolean events = loadEventsEnabled();
+        long pollSeconds = events ? loadSweepIntervalSeconds() : loadPollIntervalSeconds();
         this.poller = new DynHostPoller(this, hosts);
         poller.start(pollSeconds);
 
-        getLogger().info("Host polling enabled: every " + pollSeconds + "s");
+        if (events) {
+            // hosts push changes; polling is only a slow consistency sweep
+            for (HostRegistry.HostDef h : hosts.allHosts()) {
+                HostEventStream stream = new HostEventStream(this, hosts, h, poller);
+                eventStreams.add(stream);
+                stream.start();
+            }
+            getLogger().info("Host event streams enabled, consistency sweep every " + pollSeconds + "s");
+        } else {
+            getLogger().info("Host polling enabled: every " + pollSeconds + "s");
+        }
 
         getLogger().info("ServerFabric-Proxy enabled with " + hosts.allHosts().size() + " host(s)");
     }
 
+    @Override
+    public void onDisable() {
+        for (HostEventStream stream : eventStreams) stream.stop();
+        eventStreams.clear();
+    }
+
     public HostRegistry hostRegistry() {
         return hosts;
     }
@@ -144,6 +162,26 @@ public final class DynProxyPlugin extends Plugin {
             Files.writeString(cfg.toPath(), yml);
         }
     }
+    private boolean loadEventsEnabled() {
+        try {
+            var cfg = ConfigurationProvider.getProvider(YamlConfiguration.class)
+                    .load(new File(getDataFolder(), "config.yml"));
+            return cfg.getBoolean("events", true);
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    private long loadSweepIntervalSeconds() {
+        try {
+            var cfg = ConfigurationProvider.getProvider(YamlConfiguration.class)
+                    .load(new File(getDataFolder(), "config.yml"));
+            return Math.max(10, cfg.getLong("sweepIntervalSeconds", 60));
+        } catch (Exception e) {
+            return 60;
+        }
+    }
+
     private long loadPollIntervalSeconds() {
         try {
             var cfg = net.md_5.bungee.config.ConfigurationProvider.getProvider(net.md_5.bungee.config.YamlConfiguration.class)
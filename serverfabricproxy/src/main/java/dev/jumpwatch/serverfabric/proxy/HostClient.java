@@ -6,29 +6,184 @@ import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 public final class HostClient {
+    // /status feeds placement and the sweep; a dead or wedged host must cost seconds, not a hung create
+    private static final int STATUS_CONNECT_TIMEOUT_MS = 2000;
+    private static final int STATUS_READ_TIMEOUT_MS = 3000;
+
     private final String baseUrl;
     private final String token;
 
+    // last full /status body and its ETag; a 304 reuses the body
+    private volatile String statusEtag;
+    private volatile String statusBody;
+    private volatile long statusVersion = -1;
+    private volatile String statusEpoch = ""; // host run the version belongs to; empty for older hosts
+    // capacity from the last /status reply; null before the first one and while the host doesn't answer
+    private volatile Capacity capacity;
+
+    // instance states pushed by HostEventStream; only trusted while the stream is connected
+    private final Map<String, String> streamedStates = new ConcurrentHashMap<>();
+    private volatile boolean streaming;
+
     public HostClient(String baseUrl, String token) {
         this.baseUrl = baseUrl;
         this.token = token;
     }
 
+    /** What the host can still take; -1 where an older host doesn't report it. */
+    public record Capacity(long memoryFreeMb, int portsFree) {}
+
     public static final class CreateResponse {
         public final String name;
         public final int port;
-        public CreateResponse(String name, int port) { this.name = name; this.port = port; }
+        public final String strategy; // how the host provisioned the instance (REFLINK/HARDLINK/COPY), may be empty
+        public CreateResponse(String name, int port, String strategy) {
+            this.name = name;
+            this.port = port;
+            this.strategy = strategy;
+        }
+    }
+
+    String token() {
+        return token;
+    }
+
+    void setStreaming(boolean on) {
+        streaming = on;
+        if (!on) streamedStates.clear();
+        synchronized (streamedStates) {
+            streamedStates.notifyAll();
+        }
+    }
+
+    void applyState(String name, String state) {
+        if (state == null) streamedStates.remove(name);
+        else streamedStates.put(name, state);
+        synchronized (streamedStates) {
+            streamedStates.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until {@code name} reaches one of {@code states} or the timeout passes; returns the last known state.
+     * Uses pushed events while the host's event stream is up, otherwise long-polls /status.
+     */
+    public String awaitState(String name, long timeoutMs, String... states) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        String state = getState(name);
+        while (true) {
+            for (String s : states) if (s.equalsIgnoreCase(state)) return state;
+
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) return state;
+
+            if (streaming) {
+                synchronized (streamedStates) {
+                    String now = streamedStates.get(name);
+                    if (now == null || now.equals(state)) streamedStates.wait(Math.min(left, 10_000));
+                }
+            } else {
+                awaitStatusChange(Math.min(left, 10_000));
+            }
+            state = getState(name);
+        }
     }
 
     public CreateResponse create(String template, String name) throws IOException {
         String json = "{\"template\":\"" + esc(template) + "\",\"name\":\"" + esc(name) + "\"}";
         String resp = post("/server/create", json);
-        // tiny parse: {"name":"mg-001","port":25571}
+        // tiny parse: {"name":"mg-001","port":25571,"strategy":"REFLINK"}
         String rName = extract(resp, "\"name\":\"", "\"");
-        int rPort = Integer.parseInt(extract(resp, "\"port\":", "}").replaceAll("[^0-9]", ""));
-        return new CreateResponse(rName, rPort);
+        String portStr = grab(resp, "\"port\":", ",");
+        if (portStr.isEmpty() || portStr.contains("}")) portStr = extract(resp, "\"port\":", "}");
+        int rPort = Integer.parseInt(portStr.replaceAll("[^0-9]", ""));
+        String rStrategy = grab(resp, "\"strategy\":\"", "\"");
+        return new CreateResponse(rName, rPort, rStrategy);
+    }
+
+    /**
+     * Claims an already RUNNING hot standby of {@code template} from the host.
+     * Returns null if the host has none ready; callers then fall back to create + start.
+     */
+    public CreateResponse claim(String template) throws IOException {
+        String resp = post("/server/claim", "{\"template\":\"" + esc(template) + "\"}");
+        // {"claimed":true,"name":"mg-hot-1a2b","port":25571}
+        if (!resp.contains("\"claimed\":true")) return null;
+        String rName = extract(resp, "\"name\":\"", "\"");
+        int rPort = Integer.parseInt(grab(resp, "\"port\":", "}").replaceAll("[^0-9]", ""));
+        return new CreateResponse(rName, rPort, "HOT");
+    }
+
+    /** One line of a /server/bulk stream; {@code created..running} are only set on the final DONE line. */
+    public static final class BulkEvent {
+        public final String event; // CREATED, QUEUED, FAILED, STATE, DONE or ERROR
+        public final String name;
+        public final int port;
+        public final String state;
+        public final String error;
+        public final int created, queued, failed, running;
+        public BulkEvent(String event, String name, int port, String state, String error, int created, int queued,
+                         int failed, int running) {
+            this.event = event;
+            this.name = name;
+            this.port = port;
+            this.state = state;
+            this.error = error;
+            this.created = created;
+            this.queued = queued;
+            this.failed = failed;
+            this.running = running;
+        }
+    }
+
+    /**
+     * Creates {@code count} instances "&lt;prefix&gt;-N" of {@code template} in one request (and queues their starts
+     * if {@code start}). {@code onEvent} sees every line as the host streams it, ending with DONE (or ERROR);
+     * with {@code waitMs > 0} the host keeps streaming STATE lines until the instances are up or the time is up.
+     */
+    public void bulk(String template, int count, String prefix, boolean start, long waitMs, Consumer<BulkEvent> onEvent)
+            throws IOException {
+        String json = "{\"template\":\"" + esc(template) + "\",\"count\":" + count + ",\"prefix\":\"" + esc(prefix)
+                + "\",\"start\":" + start + ",\"waitMs\":" + waitMs + "}";
+        URL url = new URL(baseUrl + "/server/bulk");
+        HttpURLConnection con = (HttpURLConnection) url.openConnection();
+        con.setRequestMethod("POST");
+        con.setRequestProperty("Content-Type", "application/json");
+        con.setRequestProperty("Authorization", "Bearer " + token);
+        con.setDoOutput(true);
+        try (OutputStream os = con.getOutputStream()) {
+            os.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        int code = con.getResponseCode();
+        if (code < 200 || code >= 300) throw new IOException("HTTP " + code + ": " + readAll(con.getErrorStream()));
+
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(con.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isBlank()) continue;
+                // {"event":"CREATED","name":"cup-1","port":25571,...}  /  {"event":"DONE",...,"created":8,"failed":0,"running":8,...}
+                onEvent.accept(new BulkEvent(grab(line, "\"event\":\"", "\""), grab(line, "\"name\":\"", "\""),
+                        intField(line, "port"), grab(line, "\"state\":\"", "\""), grab(line, "\"error\":\"", "\""),
+                        intField(line, "created"), intField(line, "queued"), intField(line, "failed"),
+                        intField(line, "running")));
+            }
+        }
+    }
+
+    private static int intField(String json, String field) {
+        String v = grab(json, "\"" + field + "\":", ",");
+        if (v.contains("}")) v = v.substring(0, v.indexOf('}'));
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
     public void start(String name) throws IOException { post("/server/start", "{\"name\":\"" + esc(name) + "\"}"); }
@@ -76,8 +231,99 @@ public final class HostClient {
         return src.substring(a, b);
     }
 
+    /** Full /status JSON. Sends If-None-Match, so an unchanged host answers 304 and the cached body is reused. */
     public String statusJson() throws IOException {
-        return get("/status");
+        URL url = new URL(baseUrl + "/status");
+        HttpURLConnection con = (HttpURLConnection) url.openConnection();
+        con.setRequestMethod("GET");
+        con.setRequestProperty("Authorization", "Bearer " + token);
+        con.setConnectTimeout(STATUS_CONNECT_TIMEOUT_MS);
+        con.setReadTimeout(STATUS_READ_TIMEOUT_MS);
+        String etag = statusEtag;
+        String cached = statusBody;
+        if (etag != null && cached != null) con.setRequestProperty("If-None-Match", etag);
+
+        int code;
+        String resp;
+        try {
+            code = con.getResponseCode();
+            if (code == 304 && cached != null) return cached;
+
+            InputStream is = (code >= 200 && code < 300) ? con.getInputStream() : con.getErrorStream();
+            resp = readAll(is);
+        } catch (IOException e) {
+            capacity = null;
+            throw e;
+        }
+        if (code < 200 || code >= 300) {
+            capacity = null;
+            throw new IOException("HTTP " + code + ": " + resp);
+        }
+
+        statusBody = resp;
+        statusEtag = con.getHeaderField("ETag");
+        statusVersion = parseVersion(resp);
+        statusEpoch = grab(resp, "\"epoch\":\"", "\"");
+        capacity = parseCapacity(resp);
+        return resp;
+    }
+
+    /**
+     * Long-polls the host until its status changes after the last full {@link #statusJson()} (or
+     * {@code waitMs} passes). Returns true if something changed; callers then re-read status.
+     */
+    public boolean awaitStatusChange(long waitMs) throws IOException {
+        long since = statusVersion;
+        if (since < 0) return true;
+
+        String epoch = statusEpoch;
+        URL url = new URL(baseUrl + "/status?since=" + since + "&wait=" + Math.max(0, waitMs)
+                + (epoch.isEmpty() ? "" : "&epoch=" + epoch));
+        HttpURLConnection con = (HttpURLConnection) url.openConnection();
+        con.setRequestMethod("GET");
+        con.setRequestProperty("Authorization", "Bearer " + token);
+        con.setConnectTimeout(STATUS_CONNECT_TIMEOUT_MS);
+        con.setReadTimeout((int) Math.min(Integer.MAX_VALUE, waitMs + 10_000));
+
+        int code = con.getResponseCode();
+        if (code == 304) return false;
+
+        InputStream is = (code >= 200 && code < 300) ? con.getInputStream() : con.getErrorStream();
+        String resp = readAll(is);
+        if (code < 200 || code >= 300) throw new IOException("HTTP " + code + ": " + resp);
+        capacity = parseCapacity(resp);
+        return true;
+    }
+
+    /**
+     * Capacity as of the last /status the poller or {@link #refreshCapacity} fetched, without asking the host;
+     * null if it hasn't answered yet or stopped answering.
+     */
+    public Capacity capacity() {
+        return capacity;
+    }
+
+    /** Re-reads /status so {@link #capacity} catches up with instances created, started or stopped since. */
+    public void refreshCapacity() throws IOException {
+        statusJson();
+    }
+
+    private static Capacity parseCapacity(String json) {
+        String mem = grab(json, "\"memoryFreeMb\":", ",").replaceAll("[^0-9]", "");
+        String ports = grab(json, "\"portsFree\":", ",").replaceAll("[^0-9]", "");
+        try {
+            return new Capacity(mem.isEmpty() ? -1 : Long.parseLong(mem), ports.isEmpty() ? -1 : Integer.parseInt(ports));
+        } catch (NumberFormatException e) {
+            return new Capacity(-1, -1);
+        }
+    }
+
+    private static long parseVersion(String json) {
+        try {
+            return Long.parseLong(grab(json, "\"version\":", ",").replaceAll("[^0-9]", ""));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     private String get(String path) throws IOException {
@@ -155,6 +401,11 @@ public final class HostClient {
     }
 
     public String getState(String name) throws IOException {
+        if (streaming) {
+            String cached = streamedStates.get(name);
+            if (cached != null) return cached;
+        }
+
         String json = statusJson();
 
         // very naive parse: find object containing "name":"<name>"
@@ -0,0 +1,195 @@
+package dev.jumpwatch.serverfabric.proxy;
+
+import net.md_5.bungee.api.ProxyServer;
+import net.md_5.bungee.api.config.ServerInfo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One long-lived Server-Sent-Events connection to a host's /events endpoint.
+ *
+ * CREATED/STATE/DELETED events register, re-point or unregister the Bungee ServerInfo and the
+ * instance -> host map as they happen. Reconnects resume with Last-Event-ID; if the host answers
+ * RESYNC (or this is the first connection) a consistency sweep is triggered instead.
+ */
+public final class HostEventStream {
+
+    private static final int READ_TIMEOUT_MS = 45_000; // host sends a keepalive every 15 s
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final DynProxyPlugin plugin;
+    private final HostRegistry hosts;
+    private final HostRegistry.HostDef host;
+    private final DynHostPoller poller;
+
+    private volatile boolean running = true;
+    private volatile long lastEventId = -1;
+    private volatile HttpURLConnection current;
+    private final AtomicBoolean capacityQueued = new AtomicBoolean(false);
+    private Thread thread;
+    // stream thread only; a HELLO resets both, so a drop after a healthy session retries fast and warns again
+    private long backoff = 1000;
+    private boolean warned;
+
+    public HostEventStream(DynProxyPlugin plugin, HostRegistry hosts, HostRegistry.HostDef host, DynHostPoller poller) {
+        this.plugin = plugin;
+        this.hosts = hosts;
+        this.host = host;
+        this.poller = poller;
+    }
+
+    public void start() {
+        thread = new Thread(this::run, "ServerFabric-events-" + host.id());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        HttpURLConnection con = current;
+        if (con != null) con.disconnect();
+        if (thread != null) thread.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                connectAndRead();
+            } catch (Exception e) {
+                if (!running) return;
+                if (!warned) {
+                    plugin.getLogger().warning("Event stream to host " + host.id() + " lost: " + e.getMessage()
+                            + " (retrying, polling sweep still active)");
+                    warned = true;
+                }
+            } finally {
+                host.client().setStreaming(false);
+            }
+
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(MAX_BACKOFF_MS, backoff * 2);
+        }
+    }
+
+    private void connectAndRead() throws IOException {
+        HttpURLConnection con = (HttpURLConnection) new URL(host.baseUrl() + "/events").openConnection();
+        con.setRequestMethod("GET");
+        con.setRequestProperty("Authorization", "Bearer " + host.client().token());
+        con.setRequestProperty("Accept", "text/event-stream");
+        if (lastEventId >= 0) con.setRequestProperty("Last-Event-ID", String.valueOf(lastEventId));
+        con.setConnectTimeout(5000);
+        con.setReadTimeout(READ_TIMEOUT_MS);
+        current = con;
+
+        int code = con.getResponseCode();
+        if (code != 200) throw new IOException("HTTP " + code);
+
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(con.getInputStream(), StandardCharsets.UTF_8))) {
+            long id = -1;
+            String event = null;
+            StringBuilder data = new StringBuilder();
+
+            String line;
+            while (running && (line = br.readLine()) != null) {
+                if (line.isEmpty()) {
+                    if (event != null) dispatch(id, event, data.toString());
+                    id = -1;
+                    event = null;
+                    data.setLength(0);
+                } else if (line.startsWith("id:")) {
+                    try { id = Long.parseLong(line.substring(3).trim()); } catch (NumberFormatException ignored) {}
+                } else if (line.startsWith("event:")) {
+                    event = line.substring(6).trim();
+                } else if (line.startsWith("data:")) {
+                    data.append(line.substring(5).trim());
+                }
+                // ":" lines are keepalives
+            }
+        } finally {
+            current = null;
+        }
+        throw new IOException("stream closed by host");
+    }
+
+    private void dispatch(long id, String event, String data) {
+        switch (event) {
+            case "HELLO" -> {
+                boolean fresh = lastEventId < 0;
+                host.client().setStreaming(true);
+                backoff = 1000;
+                warned = false;
+                if (fresh) poller.sweepAsync(); // anything that happened before we subscribed
+                plugin.getLogger().info("Event stream connected to host " + host.id()
+                        + (fresh ? "" : " (resumed after " + lastEventId + ")"));
+            }
+            case "RESYNC" -> poller.sweepAsync();
+            case "CREATED", "STATE" -> {
+                String name = grab(data, "\"name\":\"", "\"");
+                String state = grab(data, "\"state\":\"", "\"");
+                int port = parsePort(data);
+                if (name.isEmpty() || port <= 0) break;
+
+                hosts.mapInstanceToHost(name, host.id());
+                ServerInfo existing = ProxyServer.getInstance().getServers().get(name);
+                if (existing == null) {
+                    plugin.registerServer(name, host.connectHost(), port);
+                } else if (plugin.isDynamicServer(name) && existing.getAddress().getPort() != port) {
+                    plugin.registerServer(name, host.connectHost(), port);
+                }
+                host.client().applyState(name, state);
+            }
+            case "DELETED" -> {
+                String name = grab(data, "\"name\":\"", "\"");
+                if (name.isEmpty()) break;
+                if (plugin.isDynamicServer(name)) plugin.unregisterServer(name);
+                hosts.unmapInstance(name);
+                host.client().applyState(name, null);
+            }
+            default -> {
+                // newer host, unknown event type
+            }
+        }
+        if (id >= 0) lastEventId = id;
+        if (!"RESYNC".equals(event)) refreshCapacityAsync();
+    }
+
+    /** Instances came, went or changed state, so the host's free memory and ports did too; coalesced. */
+    private void refreshCapacityAsync() {
+        if (!capacityQueued.compareAndSet(false, true)) return;
+        ProxyServer.getInstance().getScheduler().runAsync(plugin, () -> {
+            capacityQueued.set(false);
+            try {
+                host.client().refreshCapacity();
+            } catch (IOException ignored) {
+                // capacity is cleared, placement skips the host until it answers again
+            }
+        });
+    }
+
+    private static int parsePort(String json) {
+        try {
+            return Integer.parseInt(grab(json, "\"port\":", ",").replaceAll("[^0-9]", ""));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String grab(String src, String left, String right) {
+        int a = src.indexOf(left);
+        if (a < 0) return "";
+        a += left.length();
+        int b = src.indexOf(right, a);
+        if (b < 0) b = src.length();
+        return src.substring(a, b);
+    }
+}
@@ -36,10 +36,31 @@ public final class HostRegistry {
         instanceToHostId.remove(instanceName);
     }
 
-    public HostDef pickHostRoundRobin() {
+    /**
+     * The host with the most free memory for a new instance, going by the capacity each host last reported to
+     * the poller (no request is made here). Hosts that didn't answer or have no free port are skipped; round
+     * robin among equals, and over all hosts while none has reported yet. Null if every host is full or down.
+     */
+    public HostDef pickHostForPlacement() {
         List<HostDef> list = new ArrayList<>(hosts.values());
         if (list.isEmpty()) return null;
-        int idx = Math.floorMod(rr.getAndIncrement(), list.size());
-        return list.get(idx);
+        int start = Math.floorMod(rr.getAndIncrement(), list.size());
+
+        HostDef best = null;
+        long bestFree = -2;
+        boolean anyReported = false;
+        for (int i = 0; i < list.size(); i++) {
+            HostDef h = list.get((start + i) % list.size());
+            HostClient.Capacity c = h.client().capacity();
+            if (c == null) continue;
+            anyReported = true;
+            if (c.portsFree() == 0) continue;
+            if (c.memoryFreeMb() > bestFree) {
+                best = h;
+                bestFree = c.memoryFreeMb();
+            }
+        }
+        if (best == null && !anyReported) return list.get(start);
+        return best;
     }
 }
\ No newline at end of file